@@ -0,0 +1,61 @@
+package org.mozilla.msrp.platform.common
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import javax.annotation.PreDestroy
+import javax.inject.Named
+
+/**
+ * Bounded pool for running independent blocking calls of a single request side by side.
+ *
+ * When the pool is saturated the work runs on the calling thread, so a burst degrades
+ * to sequential execution instead of queueing without limit.
+ */
+@Named
+class FanOutExecutor {
+
+    private val executor = ThreadPoolExecutor(
+            POOL_SIZE,
+            POOL_SIZE,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+            ThreadFactoryBuilder().setNameFormat("fan-out-%d").setDaemon(true).build(),
+            ThreadPoolExecutor.CallerRunsPolicy()
+    ).apply {
+        allowCoreThreadTimeOut(true)
+    }
+
+    /**
+     * Apply [block] to every item in parallel, results keep the order of [items].
+     * The first failure is re-thrown as is.
+     */
+    fun <T, R> map(items: List<T>, block: (T) -> R): List<R> {
+        if (items.size <= 1) {
+            return items.map(block)
+        }
+
+        val futures = items.map { item -> executor.submit<R> { block(item) } }
+        return futures.map {
+            try {
+                it.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+    }
+
+    companion object {
+        private const val POOL_SIZE = 16
+        private const val QUEUE_SIZE = 256
+        private const val KEEP_ALIVE_SECONDS = 60L
+    }
+}
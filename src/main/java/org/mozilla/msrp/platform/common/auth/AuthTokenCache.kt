@@ -0,0 +1,61 @@
+package org.mozilla.msrp.platform.common.auth
+
+import com.google.common.cache.CacheBuilder
+import org.mozilla.msrp.platform.util.hash
+import java.time.Clock
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Result of authenticating a Firebase ID token, keyed by the hash of the token so raw tokens never
+ * stay in memory.
+ *
+ * Entries live at most [CACHE_TIME_MINUTES], and never past the expiration of the token itself.
+ * Status changes of a user on this instance invalidate the user's entries right away, other
+ * instances pick the change up when their entries expire.
+ */
+@Named
+class AuthTokenCache {
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val cache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_TIME_MINUTES, TimeUnit.MINUTES)
+            .recordStats()
+            .build<String, AuthEntry>()
+
+    fun get(token: String): AuthEntry? {
+        val key = token.hash()
+        val entry = cache.getIfPresent(key) ?: return null
+        if (entry.expiresAt <= clock.millis()) {
+            cache.invalidate(key)
+            return null
+        }
+        return entry
+    }
+
+    fun put(token: String, entry: AuthEntry) {
+        cache.put(token.hash(), entry)
+    }
+
+    fun invalidateUser(userId: String) {
+        cache.asMap().values.removeIf { it.userId == userId }
+    }
+
+    data class AuthEntry(
+            val firebaseUid: String,
+            val firefoxUid: String,
+            val userId: String,
+            val suspended: Boolean,
+            /** token expiration, in epoch millis */
+            val expiresAt: Long
+    )
+
+    companion object {
+        private const val CACHE_SIZE = 10_000L
+        private const val CACHE_TIME_MINUTES = 5L
+    }
+}
@@ -35,6 +35,9 @@ public class FirebaseAuthInterceptor implements HandlerInterceptor {
     @Inject
     UserRepository userRepository;
 
+    @Inject
+    AuthTokenCache authTokenCache;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
 
@@ -45,38 +48,38 @@ public class FirebaseAuthInterceptor implements HandlerInterceptor {
             String jwt = authorization.replace(HEADER_BEAR, "");
 
             try {
-                FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(jwt);
+                AuthTokenCache.AuthEntry authEntry = authTokenCache.get(jwt);
+                if (authEntry == null) {
+                    FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(jwt);
 
-                if (decodedToken.getUid().isEmpty()) {
-                    log.warn("preHandle: decodedToken.getUid().isEmpty()");
+                    if (decodedToken.getUid().isEmpty()) {
+                        log.warn("preHandle: decodedToken.getUid().isEmpty()");
 
-                    handleThrowable(response, HttpStatus.UNAUTHORIZED, "No such user");
+                        handleThrowable(response, HttpStatus.UNAUTHORIZED, "No such user");
 
-                    return false;
-
-                } else {
-                    String userId = getUserId(decodedToken);
-                    if (userId == null) {
-                        log.info("preHandle: createAnonymousUser");
-                        // the user document is not ready. Let's create it now.
-                        userId = userRepository.createAnonymousUser(decodedToken.getUid());
-                        log.info("preHandle: createAnonymousUser done:" + userId);
-                    } else if (userRepository.isUserSuspended(userId)) {
-                        log.warn("preHandle: user suspended uid={}", userId);
-                        handleThrowable(response, HttpStatus.FORBIDDEN, "user suspended");
                         return false;
                     }
 
-                    log.info("preHandle: success:" + userId);
-
-                    Locale locale = request.getLocale();
-                    request.setAttribute("uid", userId);
-                    request.setAttribute("locale", locale);
-                    log.info("preHandle: setAttribute(uid={}, locale={})", userId, locale);
+                    authEntry = authenticate(decodedToken);
+                    authTokenCache.put(jwt, authEntry);
+                }
 
-                    return true;
+                String userId = authEntry.getUserId();
+                if (authEntry.getSuspended()) {
+                    log.warn("preHandle: user suspended uid={}", userId);
+                    handleThrowable(response, HttpStatus.FORBIDDEN, "user suspended");
+                    return false;
                 }
 
+                log.info("preHandle: success:" + userId);
+
+                Locale locale = request.getLocale();
+                request.setAttribute("uid", userId);
+                request.setAttribute("locale", locale);
+                log.info("preHandle: setAttribute(uid={}, locale={})", userId, locale);
+
+                return true;
+
             } catch (IllegalArgumentException e) {
                 logThrowable("illegal token format", e);
                 handleThrowable(response, HttpStatus.BAD_REQUEST, "Illegal token format");
@@ -115,6 +118,25 @@ public class FirebaseAuthInterceptor implements HandlerInterceptor {
         writer.close();
     }
 
+    private AuthTokenCache.AuthEntry authenticate(FirebaseToken token) {
+        String fbuid = token.getUid();
+        String fxuid = (String) token.getClaims().getOrDefault("fxuid", "");
+        long expiresAt = ((Number) token.getClaims().getOrDefault("exp", 0L)).longValue() * 1000;
+
+        String userId = getUserId(token);
+        boolean suspended = false;
+        if (userId == null) {
+            log.info("preHandle: createAnonymousUser");
+            // the user document is not ready. Let's create it now.
+            userId = userRepository.createAnonymousUser(fbuid);
+            log.info("preHandle: createAnonymousUser done:" + userId);
+        } else {
+            suspended = userRepository.isUserSuspended(userId);
+        }
+
+        return new AuthTokenCache.AuthEntry(fbuid, fxuid, userId, suspended, expiresAt);
+    }
+
     @Nullable
     private String getUserId(FirebaseToken token) {
         String fbuid = token.getUid();
@@ -0,0 +1,169 @@
+package org.mozilla.msrp.platform.common.firebase
+
+import com.google.api.core.ApiFuture
+import com.google.api.core.ApiFutureCallback
+import com.google.api.core.ApiFutures
+import com.google.cloud.firestore.DocumentReference
+import com.google.cloud.firestore.FieldValue
+import com.google.cloud.firestore.Firestore
+import com.google.common.util.concurrent.MoreExecutors
+import org.mozilla.msrp.platform.firestore.FirestoreException
+import org.mozilla.msrp.platform.firestore.getUnchecked
+import org.mozilla.msrp.platform.firestore.transform
+import org.mozilla.msrp.platform.firestore.transformAsync
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Local view of [DistributedCounter]s.
+ *
+ * Approximate reads are served from memory. A stale count is refreshed in the background and
+ * local increments are applied once they are written. Strict reads always sum up the shards, for
+ * decisions that must not overshoot, e.g. a join quota.
+ *
+ * Number of shards never changes after [setupCounter], so it is cached for good.
+ */
+@Named
+class CounterCache @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val log = logger()
+
+    private val numShards = ConcurrentHashMap<String, Int>()
+    private val counts = ConcurrentHashMap<String, CachedCount>()
+
+    // running total of the local increments of each counter, a reload keeps the ones written while it ran
+    private val localAdds = ConcurrentHashMap<String, AtomicInteger>()
+
+    /**
+     * @return approximate counts in the same order as [docs], 0 for documents without the counter
+     */
+    fun getCountsAsync(docs: List<DocumentReference>, counterName: String): ApiFuture<List<Int>> {
+        val now = clock.millis()
+        val missingDocs = docs.filter { counts[getKey(it, counterName)] == null }
+                .distinctBy { it.path }
+        val staleDocs = docs.filter { doc ->
+            counts[getKey(doc, counterName)]?.let { it.isStale(now) && it.refreshing.compareAndSet(false, true) } ?: false
+        }.distinctBy { it.path }
+
+        if (staleDocs.isNotEmpty()) {
+            refreshInBackground(staleDocs, counterName)
+        }
+
+        return loadAsync(missingDocs, counterName).transform {
+            docs.map { counts[getKey(it, counterName)]?.count?.get() ?: 0 }
+        }
+    }
+
+    fun getStrictCountAsync(doc: DocumentReference, counterName: String): ApiFuture<Int> {
+        return loadAsync(listOf(doc), counterName).transform { it.first() }
+    }
+
+    fun increase(doc: DocumentReference, counterName: String) = add(doc, counterName, 1)
+
+    fun decrease(doc: DocumentReference, counterName: String) = add(doc, counterName, -1)
+
+    /**
+     * Wait for the shard update, so a strict read issued afterwards sees it. A failed update is
+     * logged and not applied to the cached count.
+     */
+    private fun add(doc: DocumentReference, counterName: String, value: Int) {
+        val counterRef = doc.getCounterRef(counterName)
+        val shards = getNumShardsAsync(listOf(doc), counterName).getUnchecked().first()
+        if (shards <= 0) {
+            log.warn("counter not set up, path=${counterRef.path}")
+            return
+        }
+
+        val shardId = Math.floor(Math.random() * shards).toInt()
+        try {
+            counterRef.document("$shardId").update(SHARD_FIELD_NAME, FieldValue.increment(value.toLong())).getUnchecked()
+        } catch (e: FirestoreException) {
+            log.error("update counter failed, path=${counterRef.path}, value=$value", e)
+            return
+        }
+
+        val key = getKey(doc, counterName)
+        localAdds.computeIfAbsent(key) { AtomicInteger() }.addAndGet(value)
+        counts[key]?.count?.addAndGet(value)
+    }
+
+    private fun refreshInBackground(docs: List<DocumentReference>, counterName: String) {
+        val callback = object : ApiFutureCallback<List<Int>> {
+            override fun onSuccess(result: List<Int>) {}
+
+            override fun onFailure(t: Throwable) {
+                log.warn("refresh counter $counterName failed", t)
+                docs.forEach { counts[getKey(it, counterName)]?.refreshing?.set(false) }
+            }
+        }
+        ApiFutures.addCallback(loadAsync(docs, counterName), callback, MoreExecutors.directExecutor())
+    }
+
+    /**
+     * Sum up the shards of [docs] and put the results into the cache.
+     *
+     * Local increments written while the shards are read may or may not be in the sums, they are
+     * added on top of the cached count so none is dropped. One can be counted twice until the next
+     * reload.
+     */
+    private fun loadAsync(docs: List<DocumentReference>, counterName: String): ApiFuture<List<Int>> {
+        if (docs.isEmpty()) {
+            return ApiFutures.immediateFuture(emptyList())
+        }
+
+        val keys = docs.map { getKey(it, counterName) }
+        val addsBefore = keys.map { getLocalAdds(it) }
+        val counterRefs = docs.map { it.getCounterRef(counterName) }
+        return getNumShardsAsync(docs, counterName)
+                .transformAsync { shards -> firestore.sumShardsAsync(counterRefs, shards) }
+                .transform { results ->
+                    val now = clock.millis()
+                    keys.indices.forEach { i ->
+                        val addsDuringLoad = getLocalAdds(keys[i]) - addsBefore[i]
+                        counts[keys[i]] = CachedCount(AtomicInteger(results[i] + addsDuringLoad), now)
+                    }
+                    results
+                }
+    }
+
+    private fun getLocalAdds(key: String) = localAdds[key]?.get() ?: 0
+
+    private fun getNumShardsAsync(docs: List<DocumentReference>, counterName: String): ApiFuture<List<Int>> {
+        val counterRefs = docs.map { it.getCounterRef(counterName) }
+        val unknownRefs = counterRefs.filterNot { numShards.containsKey(it.path) }
+
+        return firestore.getNumShardsAsync(unknownRefs).transform { results ->
+            // counters not set up yet are looked up again next time
+            unknownRefs.zip(results)
+                    .filter { (_, shards) -> shards > 0 }
+                    .forEach { (counterRef, shards) -> numShards[counterRef.path] = shards }
+
+            counterRefs.map { numShards[it.path] ?: 0 }
+        }
+    }
+
+    private fun getKey(doc: DocumentReference, counterName: String) = "${doc.path}#$counterName"
+
+    private class CachedCount(
+            val count: AtomicInteger,
+            private val loadedAt: Long
+    ) {
+        val refreshing = AtomicBoolean(false)
+
+        fun isStale(now: Long) = now - loadedAt > MAX_AGE_MILLIS
+    }
+
+    companion object {
+        private const val MAX_AGE_MILLIS = 30_000L
+    }
+}
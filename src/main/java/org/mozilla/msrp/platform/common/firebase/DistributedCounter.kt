@@ -1,11 +1,13 @@
 package org.mozilla.msrp.platform.common.firebase
 
+import com.google.api.core.ApiFuture
 import com.google.cloud.firestore.CollectionReference
 import com.google.cloud.firestore.DocumentReference
 import com.google.cloud.firestore.FieldValue
-import org.mozilla.msrp.platform.firestore.getResultsUnchecked
-import org.mozilla.msrp.platform.firestore.getUnchecked
+import com.google.cloud.firestore.Firestore
+import org.mozilla.msrp.platform.firestore.getAllAsync
 import org.mozilla.msrp.platform.firestore.setUnchecked
+import org.mozilla.msrp.platform.firestore.transform
 
 /**
  * Each counter is structured as below
@@ -31,13 +33,6 @@ class DistributedCounter(
         private val counterRef: CollectionReference,
         private val numShards: Int
 ) {
-    val count: Int
-        get() {
-            return counterRef.getResultsUnchecked()
-                    .filterNot { it.id == NUM_SHARDS_DOC_NAME }
-                    .sumBy { it.toObject(ShardDoc::class.java).count }
-        }
-
     fun increase() = add(1)
 
     fun decrease() = add(-1)
@@ -48,7 +43,6 @@ class DistributedCounter(
         shardRef.update(SHARD_FIELD_NAME, FieldValue.increment(value.toLong()))
     }
 
-
     data class ShardDoc(val count: Int = 0)
 }
 
@@ -62,12 +56,34 @@ fun DocumentReference.setupCounter(counterName: String, numShards: Int) {
     counterRef.document(NUM_SHARDS_DOC_NAME).setUnchecked(mapOf(SHARD_FIELD_NAME to numShards))
 }
 
-fun DocumentReference.getCounter(counterName: String): DistributedCounter? {
-    val numShardsDoc = this.collection(getShardsCollectionName(counterName)).document(NUM_SHARDS_DOC_NAME).getUnchecked()
-    val numShards = numShardsDoc.getLong(SHARD_FIELD_NAME)?.toInt() ?: return null
+/**
+ * @return number of shards of each counter, 0 for counters which are not set up
+ */
+internal fun Firestore.getNumShardsAsync(counterRefs: List<CollectionReference>): ApiFuture<List<Int>> {
+    val numShardsRefs = counterRefs.map { it.document(NUM_SHARDS_DOC_NAME) }
+
+    return getAllAsync(numShardsRefs).transform { numShardsDocs ->
+        val numShards = numShardsDocs.associate { it.reference.path to (it.getLong(SHARD_FIELD_NAME)?.toInt() ?: 0) }
+        numShardsRefs.map { numShards[it.path] ?: 0 }
+    }
+}
 
-    val counterRef = this.collection(getShardsCollectionName(counterName))
-    return DistributedCounter(counterRef, numShards)
+/**
+ * Sum up the shards of each counter with a single getAll()
+ */
+internal fun Firestore.sumShardsAsync(counterRefs: List<CollectionReference>, numShards: List<Int>): ApiFuture<List<Int>> {
+    val shardRefs = counterRefs.zip(numShards).map { (counterRef, shards) ->
+        (0 until shards).map { counterRef.document("$it") }
+    }
+
+    return getAllAsync(shardRefs.flatten()).transform { shardDocs ->
+        val shardCounts = shardDocs.associate { it.reference.path to (it.getLong(SHARD_FIELD_NAME)?.toInt() ?: 0) }
+        shardRefs.map { refs -> refs.sumBy { shardCounts[it.path] ?: 0 } }
+    }
+}
+
+internal fun DocumentReference.getCounterRef(counterName: String): CollectionReference {
+    return this.collection(getShardsCollectionName(counterName))
 }
 
 private fun getShardsCollectionName(counterName: String): String {
@@ -75,4 +91,4 @@ private fun getShardsCollectionName(counterName: String): String {
 }
 
 private const val NUM_SHARDS_DOC_NAME = "numShards"
-private const val SHARD_FIELD_NAME = "count"
\ No newline at end of file
+internal const val SHARD_FIELD_NAME = "count"
\ No newline at end of file
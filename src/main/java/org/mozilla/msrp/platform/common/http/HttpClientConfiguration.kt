@@ -0,0 +1,49 @@
+package org.mozilla.msrp.platform.common.http
+
+import okhttp3.Cache
+import okhttp3.ConnectionPool
+import okhttp3.OkHttpClient
+import okhttp3.logging.HttpLoggingInterceptor
+import org.mozilla.msrp.platform.common.property.HttpClientProperties
+import org.mozilla.msrp.platform.util.logger
+import org.springframework.context.annotation.Bean
+import java.io.File
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * The one [OkHttpClient] all Retrofit upstreams share, so they share its connection pool,
+ * request limits and response cache. HTTP/2 is negotiated by OkHttp where the upstream supports it.
+ */
+@Named
+class HttpClientConfiguration {
+
+    private val log = logger()
+
+    @Inject
+    lateinit var properties: HttpClientProperties
+
+    @Bean
+    fun sharedOkHttpClient(): OkHttpClient {
+        val logging = HttpLoggingInterceptor().apply {
+            level = HttpLoggingInterceptor.Level.valueOf(properties.logLevel)
+        }
+        val cacheDir = File(System.getProperty("java.io.tmpdir"), CACHE_DIR)
+        log.info("shared http client, cache at $cacheDir")
+
+        return OkHttpClient.Builder()
+                .connectionPool(ConnectionPool(properties.maxIdleConnections, properties.keepAliveMinutes, TimeUnit.MINUTES))
+                .connectTimeout(properties.connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(properties.readTimeoutSeconds, TimeUnit.SECONDS)
+                .cache(Cache(cacheDir, properties.cacheSizeMb * 1024 * 1024))
+                .addInterceptor(RequestLimitInterceptor(properties.maxRequests, properties.maxRequestsPerHost, properties.requestWaitMillis))
+                .addInterceptor(RetryInterceptor(properties.maxRetries, properties.retryBackoffMillis, properties.maxRetryMillis))
+                .addInterceptor(logging)
+                .build()
+    }
+
+    companion object {
+        private const val CACHE_DIR = "okhttp-cache"
+    }
+}
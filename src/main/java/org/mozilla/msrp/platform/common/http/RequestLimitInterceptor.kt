@@ -0,0 +1,100 @@
+package org.mozilla.msrp.platform.common.http
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okio.ForwardingSource
+import okio.Okio
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Caps the requests in flight, in total and per host, for calls made with execute().
+ * The Dispatcher limits only apply to enqueue().
+ *
+ * A request waits up to [waitMillis] for its permits and fails with an IOException after that.
+ * The permits are held, retries included, until the response body is closed.
+ */
+class RequestLimitInterceptor(
+        maxRequests: Int,
+        private val maxRequestsPerHost: Int,
+        private val waitMillis: Long
+) : Interceptor {
+
+    private val requests = Semaphore(maxRequests)
+    private val requestsByHost = ConcurrentHashMap<String, Semaphore>()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val host = chain.request().url().host()
+        val hostRequests = requestsByHost.computeIfAbsent(host) { Semaphore(maxRequestsPerHost) }
+
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis)
+        acquire(hostRequests, deadline, host)
+        try {
+            acquire(requests, deadline, host)
+        } catch (e: IOException) {
+            hostRequests.release()
+            throw e
+        }
+
+        val permits = Permits(requests, hostRequests)
+        val response = try {
+            chain.proceed(chain.request())
+        } catch (e: Exception) {
+            permits.release()
+            throw e
+        }
+        val body = response.body()
+        if (body == null) {
+            permits.release()
+            return response
+        }
+        return response.newBuilder().body(PermitBody(body, permits)).build()
+    }
+
+    private fun acquire(semaphore: Semaphore, deadline: Long, host: String) {
+        val acquired = try {
+            semaphore.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw IOException("interrupted while waiting to call $host", e)
+        }
+        if (!acquired) {
+            throw IOException("too many requests in flight, gave up calling $host after ${waitMillis}ms")
+        }
+    }
+
+    private class Permits(private val requests: Semaphore, private val hostRequests: Semaphore) {
+        private val released = AtomicBoolean()
+
+        fun release() {
+            if (released.compareAndSet(false, true)) {
+                requests.release()
+                hostRequests.release()
+            }
+        }
+    }
+
+    // gives the permits back when the caller is done reading
+    private class PermitBody(private val body: ResponseBody, private val permits: Permits) : ResponseBody() {
+
+        private val source = Okio.buffer(object : ForwardingSource(body.source()) {
+            override fun close() {
+                try {
+                    super.close()
+                } finally {
+                    permits.release()
+                }
+            }
+        })
+
+        override fun contentType() = body.contentType()
+
+        override fun contentLength() = body.contentLength()
+
+        override fun source() = source
+    }
+}
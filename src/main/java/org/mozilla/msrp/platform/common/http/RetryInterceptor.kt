@@ -0,0 +1,68 @@
+package org.mozilla.msrp.platform.common.http
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import org.mozilla.msrp.platform.util.logger
+import java.io.IOException
+import java.net.SocketTimeoutException
+
+/**
+ * Retries GET requests that failed with an IOException or a 5xx response, waiting
+ * [backoffMillis] before the first retry and twice as long before each next one.
+ * Other methods are never retried, they may not be idempotent.
+ *
+ * Timeouts are not retried, the upstream is slow rather than failing fast, and no retry starts
+ * once [maxRetryMillis] have passed since the first attempt.
+ */
+class RetryInterceptor(
+        private val maxRetries: Int,
+        private val backoffMillis: Long,
+        private val maxRetryMillis: Long
+) : Interceptor {
+
+    private val log = logger()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        if (request.method() != "GET") {
+            return chain.proceed(request)
+        }
+
+        val started = System.currentTimeMillis()
+        var attempt = 0
+        while (true) {
+            try {
+                val response = chain.proceed(request)
+                if (response.code() < 500 || !canRetry(attempt, started)) {
+                    return response
+                }
+                response.close()
+                log.info("retry ${request.url().host()} after ${response.code()}, attempt ${attempt + 1}")
+
+            } catch (e: SocketTimeoutException) {
+                throw e
+            } catch (e: IOException) {
+                if (!canRetry(attempt, started)) {
+                    throw e
+                }
+                log.info("retry ${request.url().host()} after $e, attempt ${attempt + 1}")
+            }
+            backoff(attempt)
+            attempt++
+        }
+    }
+
+    private fun canRetry(attempt: Int, started: Long): Boolean {
+        val retryAt = System.currentTimeMillis() + (backoffMillis shl attempt)
+        return attempt < maxRetries && retryAt - started <= maxRetryMillis
+    }
+
+    private fun backoff(attempt: Int) {
+        try {
+            Thread.sleep(backoffMillis shl attempt)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw IOException("interrupted while waiting to retry", e)
+        }
+    }
+}
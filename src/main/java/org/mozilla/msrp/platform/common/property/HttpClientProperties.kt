@@ -0,0 +1,35 @@
+package org.mozilla.msrp.platform.common.property
+
+import org.mozilla.msrp.platform.util.logger
+import org.springframework.boot.context.properties.ConfigurationProperties
+import javax.annotation.PostConstruct
+import javax.inject.Named
+
+/**
+ * Type-safe configuration properties of the shared upstream http client, see application.yml.
+ */
+@Named
+@ConfigurationProperties("http-client")
+class HttpClientProperties {
+    private val log = logger()
+
+    var maxIdleConnections: Int = 20
+    var keepAliveMinutes: Long = 5L
+    var maxRequests: Int = 64
+    var maxRequestsPerHost: Int = 8
+    var requestWaitMillis: Long = 2000L
+    var connectTimeoutSeconds: Long = 5L
+    var readTimeoutSeconds: Long = 10L
+    var maxRetries: Int = 2
+    var retryBackoffMillis: Long = 200L
+    var maxRetryMillis: Long = 3000L
+    var cacheSizeMb: Long = 20L
+    // NONE, BASIC, HEADERS or BODY
+    var logLevel: String = "NONE"
+
+    @PostConstruct
+    fun printProperties() {
+        log.info("HttpClientProperties is initialized: {}", toString())
+    }
+
+}
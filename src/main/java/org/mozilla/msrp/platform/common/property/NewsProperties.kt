@@ -18,6 +18,8 @@ class NewsProperties {
 
     var cacheSize: Long = 100L
     var cacheTtl: Long = 15L
+    // items read from each upstream feed, the rest of the feed is not parsed
+    var maxFeedItems: Int = 100
 
     @PostConstruct
     fun printProperties() {
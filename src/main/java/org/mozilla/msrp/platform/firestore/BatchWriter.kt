@@ -0,0 +1,90 @@
+package org.mozilla.msrp.platform.firestore
+
+import com.google.api.core.ApiFutureCallback
+import com.google.api.core.ApiFutures
+import com.google.cloud.firestore.DocumentReference
+import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.WriteBatch
+import com.google.cloud.firestore.WriteResult
+import com.google.common.util.concurrent.MoreExecutors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Group writes into [WriteBatch]es of [BATCH_VOLUME] and commit them in the background.
+ *
+ * At most [maxInFlight] batches are committing at the same time, further writes block the caller
+ * until one of them is done, so a producer can't run ahead of Firestore. Call [close] to commit
+ * the rest and wait for everything, the first failure is re-thrown there.
+ */
+class BatchWriter(
+        private val firestore: Firestore,
+        private val maxInFlight: Int = 8,
+        private val onProgress: (Int) -> Unit = {}
+) : AutoCloseable {
+
+    private val inFlight = Semaphore(maxInFlight)
+    private val committed = AtomicInteger(0)
+    private val failure = AtomicReference<Throwable>()
+
+    private var batch = firestore.batch()
+    private var batchSize = 0
+
+    /** Number of writes committed so far */
+    val count: Int
+        get() = committed.get()
+
+    fun set(ref: DocumentReference, data: Any) {
+        batch.set(ref, data)
+        onWriteAdded()
+    }
+
+    fun delete(ref: DocumentReference) {
+        batch.delete(ref)
+        onWriteAdded()
+    }
+
+    private fun onWriteAdded() {
+        batchSize++
+        if (batchSize >= BATCH_VOLUME) {
+            commit()
+        }
+    }
+
+    private fun commit() {
+        if (batchSize == 0) {
+            return
+        }
+        failure.get()?.let { throw FirestoreException(cause = it) }
+
+        val size = batchSize
+        val pending = batch
+        batch = firestore.batch()
+        batchSize = 0
+
+        inFlight.acquire()
+        val callback = object : ApiFutureCallback<List<WriteResult>> {
+            override fun onSuccess(result: List<WriteResult>) {
+                onProgress(committed.addAndGet(size))
+                inFlight.release()
+            }
+
+            override fun onFailure(t: Throwable) {
+                failure.compareAndSet(null, t)
+                inFlight.release()
+            }
+        }
+        ApiFutures.addCallback(pending.commit(), callback, MoreExecutors.directExecutor())
+    }
+
+    override fun close() {
+        commit()
+
+        // all permits back means nothing is in flight
+        inFlight.acquire(maxInFlight)
+        inFlight.release(maxInFlight)
+
+        failure.get()?.let { throw FirestoreException(cause = it) }
+    }
+}
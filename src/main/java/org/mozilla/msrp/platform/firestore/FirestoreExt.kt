@@ -1,9 +1,13 @@
 package org.mozilla.msrp.platform.firestore
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.api.core.ApiAsyncFunction
+import com.google.api.core.ApiFunction
 import com.google.api.core.ApiFuture
+import com.google.api.core.ApiFutures
 import com.google.cloud.firestore.*
 import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.MoreExecutors
 import com.google.common.util.concurrent.UncheckedExecutionException
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
@@ -34,6 +38,35 @@ fun DocumentReference.getUnchecked(): DocumentSnapshot {
     return get().getUnchecked()
 }
 
+/** Extensions for issuing independent reads at once, and joining them later */
+
+fun Query.getResultsAsync(): ApiFuture<List<QueryDocumentSnapshot>> {
+    return get().transform { it.documents }
+}
+
+fun Firestore.getAllAsync(refs: List<DocumentReference>): ApiFuture<List<DocumentSnapshot>> {
+    return if (refs.isEmpty()) {
+        ApiFutures.immediateFuture(emptyList())
+    } else {
+        getAll(*refs.toTypedArray())
+    }
+}
+
+fun <I, O> ApiFuture<I>.transform(block: (I) -> O): ApiFuture<O> {
+    return ApiFutures.transform(this, ApiFunction<I, O> { block(it) }, MoreExecutors.directExecutor())
+}
+
+fun <I, O> ApiFuture<I>.transformAsync(block: (I) -> ApiFuture<O>): ApiFuture<O> {
+    return ApiFutures.transformAsync(this, ApiAsyncFunction<I, O> { block(it) }, MoreExecutors.directExecutor())
+}
+
+/**
+ * Complete when all futures are done, [block] can then call getUnchecked() on any of them without blocking
+ */
+fun <T> whenAllComplete(futures: List<ApiFuture<*>>, block: () -> T): ApiFuture<T> {
+    return ApiFutures.allAsList(futures).transform { block() }
+}
+
 fun DocumentReference.setUnchecked(
         obj: Any,
         mapper: ObjectMapper? = null,
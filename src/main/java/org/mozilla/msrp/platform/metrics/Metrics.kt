@@ -9,6 +9,7 @@ class Metrics {
         const val EVENT_USER_BIND_FAIL = "user_bind_fail"
         const val EVENT_REDEEM_FAIL = "redeem_fail"
         const val EVENT_REDEEM_CONSUMED = "redeem_consumed"
+        const val EVENT_COUPON_CLAIM = "coupon_claim"
         const val EVENT_MISSION_JOINED = "mission_joined"
         const val EVENT_MISSION_CHECK_IN = "mission_check_in"
 
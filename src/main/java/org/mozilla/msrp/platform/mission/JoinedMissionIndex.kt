@@ -0,0 +1,135 @@
+package org.mozilla.msrp.platform.mission
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.FieldValue
+import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.SetOptions
+import com.google.cloud.firestore.Transaction
+import org.mozilla.msrp.platform.firestore.getUnchecked
+import org.mozilla.msrp.platform.firestore.parentCollection
+import org.mozilla.msrp.platform.firestore.parentDocument
+import org.mozilla.msrp.platform.firestore.setUnchecked
+import org.mozilla.msrp.platform.firestore.toObject
+import org.mozilla.msrp.platform.util.logger
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Denormalized join status of every mission a user has joined, one doc per user
+ *
+ * mission_join_index
+ *    |- {uid}
+ *          |- missions
+ *                |- mission_daily
+ *                      |- {mid}: 1
+ *                      |- {mid}: 3
+ *
+ * Users are backfilled from their join docs on the first read of a doc without the backfilled
+ * flag, which includes docs created by a join, quit or redeem before that read.
+ */
+@Named
+class JoinedMissionIndex @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    private val log = logger()
+
+    @Inject
+    lateinit var mapper: ObjectMapper
+
+    fun getJoinStatuses(uid: String): Map<MissionReferenceKey, JoinStatus> {
+        val snapshot = getIndexRef(uid).getUnchecked()
+        if (!snapshot.exists() || snapshot.getBoolean(FIELD_BACKFILLED) != true) {
+            return backfill(uid)
+        }
+        return toJoinStatuses(snapshot)
+    }
+
+    fun setJoinStatus(uid: String, missionType: String, mid: String, status: JoinStatus) {
+        getIndexRef(uid).setUnchecked(toIndexFields(missionType, mid, status.status), options = SetOptions.merge())
+    }
+
+    fun setJoinStatus(uid: String, missionType: String, mid: String, status: JoinStatus, transaction: Transaction) {
+        transaction.set(getIndexRef(uid), toIndexFields(missionType, mid, status.status), SetOptions.merge())
+    }
+
+    fun removeJoinStatus(uid: String, missionType: String, mid: String) {
+        getIndexRef(uid).setUnchecked(toIndexFields(missionType, mid, FieldValue.delete()), options = SetOptions.merge())
+    }
+
+    /**
+     * Join docs and the index doc are read in one transaction, so a join, quit or redeem in between
+     * makes it retry. Missions already in the index doc were written after the user's first read
+     * and are kept as is.
+     */
+    private fun backfill(uid: String): Map<MissionReferenceKey, JoinStatus> {
+        val indexRef = getIndexRef(uid)
+        val joinDocsQuery = firestore.collectionGroup("users").whereEqualTo("uid", uid)
+
+        val (statuses, added) = firestore.runTransaction { transaction ->
+            val snapshot = transaction.get(indexRef).getUnchecked()
+            val indexed = toJoinStatuses(snapshot)
+            if (snapshot.getBoolean(FIELD_BACKFILLED) == true) {
+                return@runTransaction indexed to 0
+            }
+
+            val joined = transaction.get(joinDocsQuery).getUnchecked()
+                    .mapNotNull { joinDoc ->
+                        val missionRef = joinDoc.reference.parentCollection.parentDocument ?: return@mapNotNull null
+                        val doc = joinDoc.toObject(MissionJoinDoc::class.java, mapper) ?: return@mapNotNull null
+                        MissionReferenceKey(missionRef.parent.id, missionRef.id) to doc.status
+                    }
+                    .toMap()
+
+            val missing = getMissingStatuses(indexed, joined)
+            transaction.set(indexRef, toBackfillFields(missing), SetOptions.merge())
+            (indexed + missing) to missing.size
+        }.getUnchecked()
+        log.info("backfill joined mission index, uid=$uid, missions=${statuses.size}, added=$added")
+
+        return statuses
+    }
+
+    private fun toJoinStatuses(snapshot: DocumentSnapshot): Map<MissionReferenceKey, JoinStatus> {
+        val missions = snapshot.get(FIELD_MISSIONS) as? Map<*, *> ?: return emptyMap()
+        val statuses = mutableMapOf<MissionReferenceKey, JoinStatus>()
+        missions.forEach { (missionType, mids) ->
+            (mids as? Map<*, *>)?.forEach { (mid, status) ->
+                val joinStatus = JoinStatus.values().find { it.status.toLong() == (status as? Number)?.toLong() }
+                if (joinStatus != null) {
+                    statuses[MissionReferenceKey(missionType.toString(), mid.toString())] = joinStatus
+                }
+            }
+        }
+        return statuses
+    }
+
+    private fun toIndexFields(missionType: String, mid: String, value: Any): Map<String, Any> {
+        return mapOf(FIELD_MISSIONS to mapOf(missionType to mapOf(mid to value)))
+    }
+
+    private fun getIndexRef(uid: String) = firestore.collection(COLLECTION_INDEX).document(uid)
+
+    companion object {
+        private const val COLLECTION_INDEX = "mission_join_index"
+        private const val FIELD_MISSIONS = "missions"
+        private const val FIELD_BACKFILLED = "backfilled"
+
+        /**
+         * @return statuses of the joined missions which are not in the index doc yet
+         */
+        internal fun getMissingStatuses(
+                indexed: Map<MissionReferenceKey, JoinStatus>,
+                joined: Map<MissionReferenceKey, JoinStatus>
+        ): Map<MissionReferenceKey, JoinStatus> {
+            return joined.filterKeys { it !in indexed }
+        }
+
+        internal fun toBackfillFields(statuses: Map<MissionReferenceKey, JoinStatus>): Map<String, Any> {
+            val missions = statuses.entries.groupBy({ it.key.missionType }, { it.key.mid to it.value.status })
+                    .mapValues { (_, mids) -> mids.toMap() }
+            return mapOf(FIELD_MISSIONS to missions, FIELD_BACKFILLED to true)
+        }
+    }
+}
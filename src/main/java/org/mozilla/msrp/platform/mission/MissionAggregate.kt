@@ -0,0 +1,37 @@
+package org.mozilla.msrp.platform.mission
+
+import org.mozilla.msrp.platform.mission.qualifier.MissionProgressDoc
+
+/**
+ * In-memory snapshot of everything a user needs to render a list of missions,
+ * resolved in a fixed number of Firestore calls by [MissionRepository.getMissionAggregate]
+ *
+ * All maps are keyed by mid
+ */
+class MissionAggregate(
+        private val joinDocs: Map<String, MissionJoinDoc> = emptyMap(),
+        private val joinCounts: Map<String, Int> = emptyMap(),
+        private val progressDocs: Map<String, MissionProgressDoc> = emptyMap(),
+        private val rewardExpiredDates: Map<String, Long> = emptyMap(),
+        private val importantMission: MissionReferenceKey? = null
+) {
+
+    fun getJoinDoc(mid: String): MissionJoinDoc? = joinDocs[mid]
+
+    fun getJoinStatus(mid: String): JoinStatus? = joinDocs[mid]?.status
+
+    fun getJoinCount(mid: String): Int = joinCounts[mid] ?: 0
+
+    fun getProgress(mid: String): MissionProgressDoc? = progressDocs[mid]
+
+    fun getRewardExpiredDate(mid: String): Long? = rewardExpiredDates[mid]
+
+    fun isImportantMission(missionType: String, mid: String): Boolean {
+        return importantMission?.let { it.missionType == missionType && it.mid == mid } ?: false
+    }
+}
+
+data class MissionReferenceKey(
+        val missionType: String,
+        val mid: String
+)
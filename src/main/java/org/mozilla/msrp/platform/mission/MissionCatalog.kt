@@ -0,0 +1,175 @@
+package org.mozilla.msrp.platform.mission
+
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.ListenerRegistration
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.firestore.getResultsUnchecked
+import org.mozilla.msrp.platform.util.logger
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * In-memory copy of mission docs and group memberships.
+ *
+ * A collection is loaded on first use, then kept fresh by a snapshot listener, with a periodic
+ * full reload in case a listener silently stops. Mission docs are indexed by (missionType, mid),
+ * by document path and by interest ping.
+ */
+@Named
+class MissionCatalog @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    private val log = logger()
+
+    private val missionCollections = ConcurrentHashMap<String, MissionCollection>()
+    private val groups = ConcurrentHashMap<String, List<MissionReferenceDoc>>()
+
+    private val registrations = CopyOnWriteArrayList<ListenerRegistration>()
+    private val loadLock = Any()
+
+    private val reloadExecutor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setNameFormat("mission-catalog-%d").setDaemon(true).build()
+    )
+
+    init {
+        reloadExecutor.scheduleWithFixedDelay({ reloadAll() }, RELOAD_MINUTES, RELOAD_MINUTES, TimeUnit.MINUTES)
+    }
+
+    /**
+     * @return true if the document at [path] belongs to a collection held by the catalog
+     */
+    fun covers(path: String): Boolean {
+        return MISSION_TYPES.contains(path.substringBefore("/"))
+    }
+
+    fun findMission(missionType: String, mid: String): MissionDoc? {
+        return getMissionCollection(missionType)?.byMid?.get(mid)
+    }
+
+    fun findMissionByPath(path: String): MissionDoc? {
+        return getMissionCollection(path.substringBefore("/"))?.byPath?.get(path)
+    }
+
+    fun getMissionsByPing(ping: String): List<MissionDoc> {
+        return MISSION_TYPES.flatMap { getMissionCollection(it)?.byPing?.get(ping) ?: emptyList() }
+    }
+
+    /**
+     * Group ids come from the client, so only a known group is cached and listened to: one whose
+     * docs all refer to a mission held by the catalog. Any other id is read as is, every time.
+     *
+     * @return reference docs of the group
+     */
+    fun getGroup(groupId: String): List<MissionReferenceDoc> {
+        groups[groupId]?.let { return it }
+
+        val group = loadGroup(groupId)
+        if (!isKnownGroup(group)) {
+            return group
+        }
+
+        synchronized(loadLock) {
+            groups[groupId]?.let { return it }
+
+            if (groups.size >= MAX_WATCHED_GROUPS) {
+                log.warn("mission catalog is full, group=$groupId is not cached")
+                return group
+            }
+
+            groups[groupId] = group
+            listen(groupId) { snapshots -> groups[groupId] = toGroup(snapshots) }
+            return group
+        }
+    }
+
+    private fun isKnownGroup(group: List<MissionReferenceDoc>): Boolean {
+        return group.isNotEmpty() && group.all { ref ->
+            ref.endpoint.startsWith("/") && findMissionByPath(ref.endpoint.substring(1)) != null
+        }
+    }
+
+    private fun getMissionCollection(missionType: String): MissionCollection? {
+        if (!MISSION_TYPES.contains(missionType)) {
+            return null
+        }
+
+        missionCollections[missionType]?.let { return it }
+
+        synchronized(loadLock) {
+            missionCollections[missionType]?.let { return it }
+
+            val collection = loadMissionCollection(missionType)
+            missionCollections[missionType] = collection
+            listen(missionType) { snapshots -> missionCollections[missionType] = MissionCollection(snapshots) }
+            return collection
+        }
+    }
+
+    private fun listen(collectionPath: String, onUpdate: (List<DocumentSnapshot>) -> Unit) {
+        val registration = firestore.collection(collectionPath).addSnapshotListener { snapshot, error ->
+            if (error != null || snapshot == null) {
+                log.warn("mission catalog listener failed, collection=$collectionPath", error)
+                return@addSnapshotListener
+            }
+            onUpdate(snapshot.documents)
+        }
+        registrations.add(registration)
+    }
+
+    private fun reloadAll() {
+        try {
+            missionCollections.keys.forEach { missionCollections[it] = loadMissionCollection(it) }
+            groups.keys.forEach { groups[it] = loadGroup(it) }
+
+        } catch (e: Exception) {
+            log.error("mission catalog reload failed", e)
+        }
+    }
+
+    private fun loadMissionCollection(missionType: String): MissionCollection {
+        return MissionCollection(firestore.collection(missionType).getResultsUnchecked())
+    }
+
+    private fun loadGroup(groupId: String): List<MissionReferenceDoc> {
+        return toGroup(firestore.collection(groupId).getResultsUnchecked())
+    }
+
+    private fun toGroup(snapshots: List<DocumentSnapshot>): List<MissionReferenceDoc> {
+        return snapshots.mapNotNull { MissionReferenceDoc.fromDocument(it) }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        reloadExecutor.shutdownNow()
+        registrations.forEach { it.remove() }
+    }
+
+    private class MissionCollection(snapshots: List<DocumentSnapshot>) {
+        val byPath: Map<String, MissionDoc> = snapshots
+                .mapNotNull { snapshot -> MissionDoc.fromDocument(snapshot)?.let { snapshot.reference.path to it } }
+                .toMap()
+
+        val byMid: Map<String, MissionDoc> = byPath.values.associateBy { it.mid }
+
+        val byPing: Map<String, List<MissionDoc>> = byPath.values
+                .flatMap { mission -> mission.interestPings.map { it to mission } }
+                .groupBy({ it.first }, { it.second })
+    }
+
+    companion object {
+        private const val RELOAD_MINUTES = 10L
+        private const val MAX_WATCHED_GROUPS = 100
+
+        private val MISSION_TYPES = MissionType.values()
+                .filter { it != MissionType.Unknown }
+                .map { it.identifier }
+                .toSet()
+    }
+}
@@ -1,6 +1,7 @@
 package org.mozilla.msrp.platform.mission
 
 import com.fasterxml.jackson.annotation.JsonValue
+import com.google.cloud.firestore.DocumentReference
 
 data class MissionJoinDoc(
         var uid: String = "",
@@ -10,6 +11,14 @@ data class MissionJoinDoc(
         var rewardDocId: String? = null          // the collection pointing to reward inventory
 )
 
+/**
+ * Join doc along with where it is stored
+ */
+data class MissionJoinRecord(
+        val reference: DocumentReference,
+        val doc: MissionJoinDoc
+)
+
 enum class JoinStatus(@JsonValue val status: Int) {
     New(0),
     Joined(1),
@@ -1,8 +1,8 @@
 package org.mozilla.msrp.platform.mission
 
+import com.google.api.core.ApiFuture
 import com.google.cloud.firestore.Transaction
 import org.mozilla.msrp.platform.mission.qualifier.DailyMissionProgressDoc
-import org.mozilla.msrp.platform.mission.qualifier.MissionProgressDoc
 
 interface MissionRepository {
     /**
@@ -14,27 +14,65 @@ interface MissionRepository {
 
     fun createMission(createData: MissionCreateData): MissionDoc
     fun findMission(missionType: String, mid: String): MissionDoc?
+    fun findMissionAsync(missionType: String, mid: String): ApiFuture<MissionDoc?>
 
     fun groupMissions(groupId: String, groupItems: List<MissionGroupItemData>): List<MissionReferenceDoc>
 
     fun getJoinStatus(uid: String, missionType: String, mid: String): JoinStatus?
+    fun getJoinStatusAsync(uid: String, missionType: String, mid: String): ApiFuture<JoinStatus?>
     fun setJoinStatus(status: JoinStatus, uid: String, missionType: String, mid: String)
 
     fun joinMission(uid: String, missionType: String, mid: String): MissionJoinDoc
 
-    fun getMissionJoinDoc(uid: String, missionType: String, mid: String): MissionJoinDoc?
+    fun getMissionJoinRecord(uid: String, missionType: String, mid: String, transaction: Transaction): MissionJoinRecord?
 
     fun quitMission(uid: String, missionType: String, mid: String): Boolean
 
+    /**
+     * @return missions listening to the ping which the user has joined and not yet completed
+     */
     fun findJoinedMissionsByPing(uid: String, ping: String): List<MissionDoc>
 
     fun getDailyMissionParams(mid: String): Map<String, Any>
     fun getDailyMissionProgress(uid: String, mid: String): DailyMissionProgressDoc?
-    fun updateDailyMissionProgress(progressDoc: MissionProgressDoc)
+
+    /**
+     * Read the current progress of (uid, mid) and replace it with the result of [update], in one
+     * transaction. [update] gets null when there's no progress, it returns its argument to leave the
+     * progress as is, and it may run more than once if the transaction is retried.
+     *
+     * @return the progress after the update
+     */
+    fun updateDailyMissionProgress(
+            uid: String,
+            mid: String,
+            update: (DailyMissionProgressDoc?) -> DailyMissionProgressDoc
+    ): DailyMissionProgressDoc
+
     fun clearDailyMissionProgress(uid: String, mid: String)
 
-    fun isImportantMission(missionType: String, mid: String): Boolean
-    fun updateMissionJoinDocAfterRedeem(uid: String, missionType: String, mid: String, rewardDocId: String, transaction: Transaction): Boolean
+    fun getImportantMission(): MissionReferenceKey?
+    fun updateMissionJoinDocAfterRedeem(
+            uid: String,
+            missionType: String,
+            mid: String,
+            joinRecord: MissionJoinRecord,
+            rewardDocId: String,
+            transaction: Transaction
+    )
 
-    fun getJoinCount(missionType: String, mid: String): Int
+    /**
+     * Join count read from the counter shards rather than the local cache, for quota checks
+     */
+    fun getStrictJoinCountAsync(missionType: String, mid: String): ApiFuture<Int>
+
+    /**
+     * Resolve join docs, join counts, progress and reward expiration of the given missions for a user
+     * in a fixed number of round trips, regardless of how many missions are passed in
+     * @param uid user id
+     * @param missions missions to be aggregated
+     * @return in-memory snapshot for building the mission list
+     */
+    fun getMissionAggregate(uid: String, missions: List<MissionDoc>): MissionAggregate
+    fun getMissionAggregateAsync(uid: String, missions: List<MissionDoc>): ApiFuture<MissionAggregate>
 }
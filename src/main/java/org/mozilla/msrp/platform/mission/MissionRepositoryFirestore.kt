@@ -1,10 +1,13 @@
 package org.mozilla.msrp.platform.mission
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.api.core.ApiFuture
+import com.google.api.core.ApiFutureCallback
+import com.google.api.core.ApiFutures
 import com.google.cloud.firestore.*
 import com.google.cloud.firestore.Query
-import org.mozilla.msrp.platform.common.firebase.DistributedCounter
-import org.mozilla.msrp.platform.common.firebase.getCounter
+import com.google.common.util.concurrent.MoreExecutors
+import org.mozilla.msrp.platform.common.firebase.CounterCache
 import org.mozilla.msrp.platform.common.firebase.setupCounter
 import org.mozilla.msrp.platform.firestore.*
 import org.mozilla.msrp.platform.mission.qualifier.DailyMissionProgressDoc
@@ -28,27 +31,41 @@ class MissionRepositoryFirestore @Inject internal constructor(
     @Inject
     lateinit var mapper: ObjectMapper
 
-    override fun getMissionsByGroupId(groupId: String): List<MissionDoc> {
-        return getMissionRefsByGroupId(groupId).mapNotNull { getMissionsByRef(it) }
-    }
+    @Inject
+    lateinit var missionCatalog: MissionCatalog
 
-    private fun getMissionRefsByGroupId(groupId: String): List<MissionReferenceDoc> {
-        val query = firestore.collection(groupId)
+    @Inject
+    lateinit var counterCache: CounterCache
 
-        return query.getResultsUnchecked().mapNotNull {
-            MissionReferenceDoc.fromDocument(it)
+    @Inject
+    lateinit var joinedMissionIndex: JoinedMissionIndex
+
+    override fun getMissionsByGroupId(groupId: String): List<MissionDoc> {
+        val refs = missionCatalog.getGroup(groupId)
+        val missionPaths = refs.mapNotNull { getMissionPath(it) }
+
+        // only missions outside of the catalog need a round trip
+        val uncachedRefs = missionPaths.filterNot { missionCatalog.covers(it) }
+                .map { firestore.document(it) }
+        val uncachedMissions = firestore.getAllAsync(uncachedRefs)
+                .getUnchecked()
+                .filter { it.exists() }
+                .mapNotNull { snapshot -> MissionDoc.fromDocument(snapshot)?.let { snapshot.reference.path to it } }
+                .toMap()
+
+        return missionPaths.mapNotNull { path ->
+            if (missionCatalog.covers(path)) {
+                missionCatalog.findMissionByPath(path)
+            } else {
+                uncachedMissions[path]
+            }
         }
     }
 
-    /**
-     * @throws MissionDatabaseException
-     */
-    private fun getMissionsByRef(ref: MissionReferenceDoc): MissionDoc? {
+    private fun getMissionPath(ref: MissionReferenceDoc): String? {
         val endpoint = ref.endpoint
         return if (endpoint.startsWith("/")) {
-            val docPath = endpoint.substring(1)
-            val snapshot = firestore.document(docPath).getUnchecked()
-            MissionDoc.fromDocument(snapshot)
+            endpoint.substring(1)
         } else {
             null
         }
@@ -88,10 +105,11 @@ class MissionRepositoryFirestore @Inject internal constructor(
     }
 
     override fun findMission(missionType: String, mid: String): MissionDoc? {
-        return firestore.collection(missionType)
-                .findDocumentsByMid(mid)
-                .firstOrNull()
-                ?.let { MissionDoc.fromDocument(it) }
+        return findMissionAsync(missionType, mid).getUnchecked()
+    }
+
+    override fun findMissionAsync(missionType: String, mid: String): ApiFuture<MissionDoc?> {
+        return ApiFutures.immediateFuture(missionCatalog.findMission(missionType, mid))
     }
 
     override fun groupMissions(
@@ -114,13 +132,20 @@ class MissionRepositoryFirestore @Inject internal constructor(
     }
 
     override fun getJoinStatus(uid: String, missionType: String, mid: String): JoinStatus? {
+        return getJoinStatusAsync(uid, missionType, mid).getUnchecked()
+    }
+
+    override fun getJoinStatusAsync(uid: String, missionType: String, mid: String): ApiFuture<JoinStatus?> {
         return firestore.collection(missionType)
                 .document(mid)
                 .collection("users")
-                .findDocumentsByUid(uid)
-                .firstOrNull()
-                ?.toObject(MissionJoinDoc::class.java, mapper)
-                ?.status
+                .whereEqualTo("uid", uid)
+                .getResultsAsync()
+                .transform { results ->
+                    results.firstOrNull()
+                            ?.toObject(MissionJoinDoc::class.java, mapper)
+                            ?.status
+                }
     }
 
     override fun setJoinStatus(status: JoinStatus, uid: String, missionType: String, mid: String) {
@@ -130,7 +155,10 @@ class MissionRepositoryFirestore @Inject internal constructor(
                 .findDocumentsByUid(uid)
                 .firstOrNull()
                 ?.reference
-                ?.setUnchecked(mapOf("status" to status.status), mapper, SetOptions.merge())
+                ?.let {
+                    it.setUnchecked(mapOf("status" to status.status), mapper, SetOptions.merge())
+                    joinedMissionIndex.setJoinStatus(uid, missionType, mid, status)
+                }
     }
 
     override fun joinMission(uid: String, missionType: String, mid: String): MissionJoinDoc {
@@ -148,58 +176,46 @@ class MissionRepositoryFirestore @Inject internal constructor(
                 ?: MissionJoinDoc(uid, missionType, mid, JoinStatus.Joined)
 
         newRecordPath.setUnchecked(newRecord, mapper)
-        missionRef.getJoinUserCounter()?.increase()
+        joinedMissionIndex.setJoinStatus(uid, missionType, mid, JoinStatus.Joined)
+        counterCache.increase(missionRef, COUNTER_JOIN_USERS)
 
         return newRecord
     }
 
-    // TODO: extract method
     /**
-     * Get the mission doc. We might want the reward doc link from it
-     * */
-    override fun getMissionJoinDoc(uid: String, missionType: String, mid: String): MissionJoinDoc? {
-        val path = firestore.collection(missionType)
-            .document(mid)
-            .collection("users")
-
-        val oldRecordSnapshot = path
-            .findDocumentsByUid(uid)
-            .firstOrNull()
+     * Read the join doc within [transaction], so it is part of the transaction's read set
+     */
+    override fun getMissionJoinRecord(
+            uid: String,
+            missionType: String,
+            mid: String,
+            transaction: Transaction
+    ): MissionJoinRecord? {
+        val query = firestore.collection(missionType)
+                .document(mid)
+                .collection("users")
+                .whereEqualTo("uid", uid)
+                .limit(1)
 
-        return oldRecordSnapshot?.toObject(MissionJoinDoc::class.java, mapper)
+        val snapshot = transaction.get(query).getUnchecked().documents.firstOrNull() ?: return null
+        val joinDoc = snapshot.toObject(MissionJoinDoc::class.java, mapper) ?: return null
+        return MissionJoinRecord(snapshot.reference, joinDoc)
     }
 
-    // return true if there's a mission document found
     override fun updateMissionJoinDocAfterRedeem(
-        uid: String,
-        missionType: String,
-        mid: String,
-        rewardDocId: String,
-        transaction: Transaction): Boolean {
-
-        val path = firestore.collection(missionType)
-            .document(mid)
-            .collection("users")
-
-
-        val oldRecordSnapshot = path
-            .findDocumentsByUid(uid)
-            .firstOrNull()
-
-        if (oldRecordSnapshot != null) {
-            val document = firestore.collection(missionType)
-                .document(mid)
-                .collection("users")
-                .document(oldRecordSnapshot.id)
+            uid: String,
+            missionType: String,
+            mid: String,
+            joinRecord: MissionJoinRecord,
+            rewardDocId: String,
+            transaction: Transaction) {
 
-            transaction.update(document,
+        transaction.update(joinRecord.reference,
                 mapOf("status" to JoinStatus.Redeemed.status,
-                    "rewardDocId" to rewardDocId,
-                    "updated_timestamp" to clock.instant().toEpochMilli()
+                        "rewardDocId" to rewardDocId,
+                        "updated_timestamp" to clock.instant().toEpochMilli()
                 ))
-            return true
-        }
-        return false
+        joinedMissionIndex.setJoinStatus(uid, missionType, mid, JoinStatus.Redeemed, transaction)
     }
 
     override fun quitMission(uid: String, missionType: String, mid: String): Boolean {
@@ -213,49 +229,29 @@ class MissionRepositoryFirestore @Inject internal constructor(
         val result = joinRecord?.reference?.delete()
 
         if (result != null) {
-            missionRef.getJoinUserCounter()?.decrease()
+            joinedMissionIndex.removeJoinStatus(uid, missionType, mid)
+            counterCache.decrease(missionRef, COUNTER_JOIN_USERS)
             return true
         }
         return false
     }
 
     override fun findJoinedMissionsByPing(uid: String, ping: String): List<MissionDoc> {
-        return firestore.collectionGroup("users")
-                .findDocumentsByUid(uid)
-                .mapNotNull { getParentMissionDoc(it) }
-                .filter { it.interestPings.contains(ping) }
-    }
-
-    private fun getParentMissionDoc(joinDoc: QueryDocumentSnapshot): MissionDoc? {
-        val missionSnapshot = joinDoc.reference
-                .parentCollection
-                .parentDocument
-                ?.getUnchecked()
-
-        return missionSnapshot?.let {
-            return MissionDoc.fromDocument(it)
-
-        } ?: run {
-            log.warn("failed to resolve parent document for join doc: ${joinDoc.reference.path}")
-            null
+        val missions = missionCatalog.getMissionsByPing(ping)
+        if (missions.isEmpty()) {
+            return emptyList()
         }
+
+        val joinStatuses = joinedMissionIndex.getJoinStatuses(uid)
+        return missions.filter { joinStatuses[MissionReferenceKey(it.missionType, it.mid)] == JoinStatus.Joined }
     }
 
     private fun Query.findDocumentsByUid(uid: String): List<QueryDocumentSnapshot> {
         return this.whereEqualTo("uid", uid).getResultsUnchecked()
     }
 
-    private fun Query.findDocumentsByMid(mid: String): List<QueryDocumentSnapshot> {
-        return this.whereEqualTo("mid", mid).getResultsUnchecked()
-    }
-
     override fun getDailyMissionParams(mid: String): Map<String, Any> {
-        val params = firestore.collection(MissionType.DailyMission.identifier)
-                .whereEqualTo("mid", mid)
-                .getResultsUnchecked()
-                .firstOrNull()
-
-        return params?.let { MissionDoc.fromDocument(it)?.missionParams } ?: emptyMap()
+        return missionCatalog.findMission(MissionType.DailyMission.identifier, mid)?.missionParams ?: emptyMap()
     }
 
     override fun getDailyMissionProgress(
@@ -263,18 +259,19 @@ class MissionRepositoryFirestore @Inject internal constructor(
             mid: String
     ): DailyMissionProgressDoc? {
 
-        val collection = getDailyMissionCollection()
-        val result = collection
-                .whereEqualTo("uid", uid)
-                .whereEqualTo("mid", mid)
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(1)
-                .getResultsUnchecked()
-                .firstOrNull()
+        val stateRef = getDailyMissionStateRef(uid, mid)
+        val state = stateRef.getUnchecked()
 
-        log.info("progress collection=${collection.path}, docId=${result?.reference?.id}")
+        log.info("progress state=${stateRef.path}, exists=${state.exists()}")
 
-        val resultDoc = result?.toObject(DailyMissionProgressDoc::class.java, mapper)
+        val resultDoc = if (state.exists()) {
+            state.toObject(DailyMissionProgressDoc::class.java, mapper)
+        } else {
+            migrateLegacyDailyMissionProgress(uid, mid) ?: run {
+                createNoProgressState(uid, mid)
+                null
+            }
+        }
 
         if (resultDoc?.progressType == ProgressType.Clear) {
             return null
@@ -283,15 +280,44 @@ class MissionRepositoryFirestore @Inject internal constructor(
         return resultDoc
     }
 
-    override fun updateDailyMissionProgress(progressDoc: MissionProgressDoc) {
-        val collection = getDailyMissionCollection()
-        log.info("firestore path: ${collection.path}")
-
-        collection.document().setUnchecked(progressDoc, mapper)
+    override fun updateDailyMissionProgress(
+            uid: String,
+            mid: String,
+            update: (DailyMissionProgressDoc?) -> DailyMissionProgressDoc
+    ): DailyMissionProgressDoc {
+        val stateRef = getDailyMissionStateRef(uid, mid)
+
+        var changed = false
+        val newProgress = firestore.runTransaction { transaction ->
+            val state = transaction.get(stateRef).get()
+            val current = if (state.exists()) {
+                state.toObject(DailyMissionProgressDoc::class.java, mapper)
+            } else {
+                transaction.get(getLegacyDailyMissionProgressQuery(uid, mid)).get()
+                        .documents
+                        .firstOrNull()
+                        ?.toObject(DailyMissionProgressDoc::class.java, mapper)
+            }
+            val progress = current?.takeIf { it.progressType != ProgressType.Clear }
+
+            val newProgress = update(progress)
+            changed = newProgress != progress
+            if (changed) {
+                transaction.set(stateRef, mapper.convertValue(newProgress, Map::class.java))
+            } else if (!state.exists() && current != null) {
+                // carry the history over
+                transaction.set(stateRef, mapper.convertValue(current, Map::class.java))
+            }
+            newProgress
+        }.getUnchecked()
+
+        if (changed) {
+            appendDailyMissionHistory(newProgress)
+        }
+        return newProgress
     }
 
     override fun clearDailyMissionProgress(uid: String, mid: String) {
-        val collection = getDailyMissionCollection()
         val now = clock.instant().toEpochMilli()
         val clearDoc = DailyMissionProgressDoc(
                 uid = uid,
@@ -302,33 +328,276 @@ class MissionRepositoryFirestore @Inject internal constructor(
                 currentDayCount = 0,
                 progressType = ProgressType.Clear
         )
-        collection.document().setUnchecked(clearDoc, mapper)
+        saveDailyMissionState(clearDoc)
+        appendDailyMissionHistory(clearDoc)
     }
 
-    override fun isImportantMission(missionType: String, mid: String): Boolean {
-        val dataMap = firestore.collection("important_mission")
-                .orderBy("created_timestamp", Query.Direction.DESCENDING)
-                .limit(1)
+    /**
+     * Replace the current state of (uid, mid), unless a newer one has been written in the meantime
+     */
+    private fun saveDailyMissionState(progressDoc: MissionProgressDoc) {
+        val stateRef = getDailyMissionStateRef(progressDoc.uid, progressDoc.mid)
+        val newState = mapper.convertValue(progressDoc, Map::class.java)
+
+        firestore.runTransaction { transaction ->
+            val currentTimestamp = transaction.get(stateRef).get().getLong("timestamp") ?: Long.MIN_VALUE
+            if (progressDoc.timestamp >= currentTimestamp) {
+                transaction.set(stateRef, newState)
+            } else {
+                log.info("newer progress exists, skip state update, path=${stateRef.path}")
+            }
+        }.getUnchecked()
+    }
+
+    /**
+     * History is kept for audit only, nothing on the request path reads it back, so don't wait for the write
+     */
+    private fun appendDailyMissionHistory(progressDoc: MissionProgressDoc) {
+        val historyRef = getDailyMissionCollection().document()
+        val callback = object : ApiFutureCallback<WriteResult> {
+            override fun onSuccess(result: WriteResult) {}
+
+            override fun onFailure(t: Throwable) {
+                log.error("append progress history failed, path=${historyRef.path}", t)
+            }
+        }
+        ApiFutures.addCallback(
+                historyRef.set(mapper.convertValue(progressDoc, Map::class.java)),
+                callback,
+                MoreExecutors.directExecutor()
+        )
+    }
+
+    /**
+     * Users who checked in before the state docs were introduced only have history, carry the latest
+     * record over so the next read is a point lookup
+     */
+    private fun migrateLegacyDailyMissionProgress(uid: String, mid: String): DailyMissionProgressDoc? {
+        val legacyDoc = getLegacyDailyMissionProgressQuery(uid, mid)
                 .getResultsUnchecked()
                 .firstOrNull()
-                ?.data ?: return false
+                ?.toObject(DailyMissionProgressDoc::class.java, mapper)
+                ?: return null
 
-        return dataMap["missionType"] == missionType && dataMap["mid"] == mid
+        saveDailyMissionState(legacyDoc)
+        return legacyDoc
     }
 
-    override fun getJoinCount(missionType: String, mid: String): Int {
-        return firestore.collection(missionType)
-                .document(mid)
-                .getJoinUserCounter()
-                ?.count ?: 0
+    /**
+     * Users without history get a cleared state, so their history isn't looked up again. Its timestamp
+     * is 0, and create() never overwrites a state written in the meantime.
+     */
+    private fun createNoProgressState(uid: String, mid: String) {
+        val noProgressDoc = DailyMissionProgressDoc(
+                uid = uid,
+                mid = mid,
+                joinDate = 0,
+                timestamp = 0,
+                missionType = MissionType.DailyMission.identifier,
+                currentDayCount = 0,
+                progressType = ProgressType.Clear
+        )
+        createDailyMissionState(noProgressDoc)
+    }
+
+    private fun createDailyMissionState(progressDoc: DailyMissionProgressDoc) {
+        val stateRef = getDailyMissionStateRef(progressDoc.uid, progressDoc.mid)
+        val callback = object : ApiFutureCallback<WriteResult> {
+            override fun onSuccess(result: WriteResult) {}
+
+            override fun onFailure(t: Throwable) {
+                // also fails when another request created the state first, which is fine
+                log.warn("create progress state failed, path=${stateRef.path}: $t")
+            }
+        }
+        ApiFutures.addCallback(
+                stateRef.create(mapper.convertValue(progressDoc, Map::class.java)),
+                callback,
+                MoreExecutors.directExecutor()
+        )
+    }
+
+    override fun getImportantMission(): MissionReferenceKey? {
+        return getImportantMissionAsync().getUnchecked()
+    }
+
+    override fun getStrictJoinCountAsync(missionType: String, mid: String): ApiFuture<Int> {
+        val missionRef = firestore.collection(missionType).document(mid)
+        return counterCache.getStrictCountAsync(missionRef, COUNTER_JOIN_USERS)
+    }
+
+    override fun getMissionAggregate(uid: String, missions: List<MissionDoc>): MissionAggregate {
+        return getMissionAggregateAsync(uid, missions).getUnchecked()
+    }
+
+    /**
+     * All reads are issued at once, only reward docs have to wait for the join docs
+     */
+    override fun getMissionAggregateAsync(uid: String, missions: List<MissionDoc>): ApiFuture<MissionAggregate> {
+        if (missions.isEmpty()) {
+            return ApiFutures.immediateFuture(MissionAggregate())
+        }
+
+        val missionRefs = missions.map { firestore.collection(it.missionType).document(it.mid) }
+
+        val joinDocs = getJoinDocsOfUserAsync(uid, missions)
+        val joinCounts = counterCache.getCountsAsync(missionRefs, COUNTER_JOIN_USERS).transform { counts ->
+            missions.zip(counts).associate { (mission, count) -> mission.mid to count }
+        }
+        val progressDocs = getLatestDailyMissionProgressAsync(uid, missions, joinDocs)
+        val rewardExpiredDates = joinDocs.transformAsync { getRewardExpiredDatesAsync(missions, it) }
+        val importantMission = getImportantMissionAsync()
+
+        return whenAllComplete(listOf(joinDocs, joinCounts, progressDocs, rewardExpiredDates, importantMission)) {
+            MissionAggregate(
+                    joinDocs = joinDocs.getUnchecked(),
+                    joinCounts = joinCounts.getUnchecked(),
+                    progressDocs = progressDocs.getUnchecked(),
+                    rewardExpiredDates = rewardExpiredDates.getUnchecked(),
+                    importantMission = importantMission.getUnchecked()
+            )
+        }
+    }
+
+    /**
+     * The user's join doc of each given mission, one limit(1) query per mission issued at once
+     */
+    private fun getJoinDocsOfUserAsync(uid: String, missions: List<MissionDoc>): ApiFuture<Map<String, MissionJoinDoc>> {
+        val joinDocs = missions.map { mission ->
+            firestore.collection(mission.missionType)
+                    .document(mission.mid)
+                    .collection("users")
+                    .whereEqualTo("uid", uid)
+                    .limit(1)
+                    .getResultsAsync()
+                    .transform { results ->
+                        results.firstOrNull()
+                                ?.toObject(MissionJoinDoc::class.java, mapper)
+                                ?.let { mission.mid to it }
+                    }
+        }
+
+        return ApiFutures.allAsList(joinDocs).transform { results -> results.filterNotNull().toMap() }
+    }
+
+    /**
+     * One getAll() for the current state of the user's daily missions. Joined missions without a state doc
+     * fall back to the history, which is only needed until those users check in again.
+     */
+    private fun getLatestDailyMissionProgressAsync(
+            uid: String,
+            missions: List<MissionDoc>,
+            joinDocs: ApiFuture<Map<String, MissionJoinDoc>>
+    ): ApiFuture<Map<String, MissionProgressDoc>> {
+        val dailyMids = missions.filter { it.missionTypeEnum == MissionType.DailyMission }
+                .map { it.mid }
+                .toSet()
+        if (dailyMids.isEmpty()) {
+            return ApiFutures.immediateFuture(emptyMap())
+        }
+
+        val states = firestore.getAllAsync(dailyMids.map { getDailyMissionStateRef(uid, it) })
+                .transform { results ->
+                    results.filter { it.exists() }
+                            .mapNotNull { it.toObject(DailyMissionProgressDoc::class.java, mapper) }
+                            .associateBy { it.mid }
+                }
+
+        return whenAllComplete(listOf(states, joinDocs)) {
+            joinDocs.getUnchecked().keys
+                    .filter { dailyMids.contains(it) && !states.getUnchecked().containsKey(it) }
+                    .toSet()
+        }.transformAsync { missingMids ->
+            val legacyRecords = if (missingMids.isEmpty()) {
+                ApiFutures.immediateFuture(emptyMap())
+            } else {
+                getLegacyDailyMissionProgressAsync(uid, missingMids)
+            }
+
+            legacyRecords.transform { legacy ->
+                // carry the history over, create() never overwrites a state written in the meantime
+                legacy.values.forEach { createDailyMissionState(it) }
+                missingMids.filterNot { legacy.containsKey(it) }.forEach { createNoProgressState(uid, it) }
+
+                val latestRecords = mutableMapOf<String, MissionProgressDoc>()
+                latestRecords.putAll(states.getUnchecked())
+                latestRecords.putAll(legacy)
+                latestRecords.filterValues { it.progressType != ProgressType.Clear }
+            }
+        }
     }
 
+    /**
+     * The latest history record of each mission, one limit(1) query per mission issued at once
+     */
+    private fun getLegacyDailyMissionProgressAsync(
+            uid: String,
+            mids: Set<String>
+    ): ApiFuture<Map<String, DailyMissionProgressDoc>> {
+        val latestRecords = mids.map { mid ->
+            getLegacyDailyMissionProgressQuery(uid, mid)
+                    .getResultsAsync()
+                    .transform { results -> results.firstOrNull()?.toObject(DailyMissionProgressDoc::class.java, mapper) }
+        }
+
+        return ApiFutures.allAsList(latestRecords).transform { records ->
+            records.filterNotNull().associateBy { it.mid }
+        }
+    }
+
+    /**
+     * One getAll() for the reward docs of every redeemed mission
+     */
+    private fun getRewardExpiredDatesAsync(
+            missions: List<MissionDoc>,
+            joinDocs: Map<String, MissionJoinDoc>
+    ): ApiFuture<Map<String, Long>> {
+        val rewardRefs = missions.mapNotNull { mission ->
+            joinDocs[mission.mid]?.rewardDocId?.let { rewardDocId ->
+                mission.mid to firestore.collection(mission.rewardType).document(rewardDocId)
+            }
+        }
+
+        return firestore.getAllAsync(rewardRefs.map { it.second }).transform { rewardDocs ->
+            val expiredDates = rewardDocs.associate { it.reference.path to it.getLong("expire_date") }
+            rewardRefs.mapNotNull { (mid, ref) -> expiredDates[ref.path]?.let { mid to it } }.toMap()
+        }
+    }
+
+    private fun getImportantMissionAsync(): ApiFuture<MissionReferenceKey?> {
+        return firestore.collection("important_mission")
+                .orderBy("created_timestamp", Query.Direction.DESCENDING)
+                .limit(1)
+                .getResultsAsync()
+                .transform { results ->
+                    val dataMap = results.firstOrNull()?.data
+                    val missionType = dataMap?.get("missionType") as? String
+                    val mid = dataMap?.get("mid") as? String
+                    if (missionType != null && mid != null) {
+                        MissionReferenceKey(missionType, mid)
+                    } else {
+                        null
+                    }
+                }
+    }
+
+    /** Append-only history of daily mission progress */
     private fun getDailyMissionCollection() =
             firestore.collection("${MissionType.DailyMission.identifier}_progress")
 
-    private fun DocumentReference.getJoinUserCounter(): DistributedCounter? {
-        return this.getCounter(COUNTER_JOIN_USERS)
-    }
+    private fun getLegacyDailyMissionProgressQuery(uid: String, mid: String) =
+            getDailyMissionCollection()
+                    .whereEqualTo("uid", uid)
+                    .whereEqualTo("mid", mid)
+                    .orderBy("timestamp", Query.Direction.DESCENDING)
+                    .limit(1)
+
+    /** Current progress of each (uid, mid) */
+    private fun getDailyMissionStateCollection() =
+            firestore.collection("${MissionType.DailyMission.identifier}_progress_state")
+
+    private fun getDailyMissionStateRef(uid: String, mid: String) =
+            getDailyMissionStateCollection().document("${mid}_$uid")
 
     companion object {
         private const val COUNTER_JOIN_USERS = "joinUsers"
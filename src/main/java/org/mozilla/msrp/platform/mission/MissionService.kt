@@ -1,8 +1,10 @@
 package org.mozilla.msrp.platform.mission
 
+import org.mozilla.msrp.platform.common.FanOutExecutor
 import org.mozilla.msrp.platform.common.getMessageOrEmpty
 import org.mozilla.msrp.platform.common.getMessageOrNull
 import org.mozilla.msrp.platform.common.isProd
+import org.mozilla.msrp.platform.firestore.getUnchecked
 import org.mozilla.msrp.platform.firestore.stringToLocalDateTime
 import org.mozilla.msrp.platform.metrics.Metrics
 import org.mozilla.msrp.platform.mission.qualifier.MissionProgressDoc
@@ -45,6 +47,9 @@ class MissionService @Inject constructor(
     @Inject
     lateinit var environment: Environment
 
+    @Inject
+    lateinit var fanOutExecutor: FanOutExecutor
+
     private val log: Logger = logger()
 
     fun getMissionsByGroupId(uid: String, groupId: String, zone: ZoneId, locale: Locale): List<MissionListItem> {
@@ -52,14 +57,17 @@ class MissionService @Inject constructor(
             ArrayList()
 
         } else {
-            this.missionRepository.getMissionsByGroupId(groupId)
+            val missions = this.missionRepository.getMissionsByGroupId(groupId)
                     .filter { isMissionValid(it) }
-                    .filter {
-                        val joinStatus = missionRepository.getJoinStatus(uid, it.missionType, it.mid)
-                        val joinCount = missionRepository.getJoinCount(it.missionType, it.mid)
+
+            val aggregate = missionRepository.getMissionAggregate(uid, missions)
+
+            missions.filter {
+                        val joinStatus = aggregate.getJoinStatus(it.mid)
+                        val joinCount = aggregate.getJoinCount(it.mid)
                         isMissionAvailableForShowing(uid, it, joinStatus, joinCount, clock, zone)
                     }
-                    .map { aggregateMissionListItem(uid, it, zone, locale) }
+                    .map { aggregateMissionListItem(it, aggregate, zone, locale) }
         }
     }
 
@@ -146,22 +154,22 @@ class MissionService @Inject constructor(
         }
     }
 
-    private fun aggregateMissionListItem(uid: String, missionDoc: MissionDoc, zone: ZoneId, locale: Locale): MissionListItem {
+    private fun aggregateMissionListItem(
+            missionDoc: MissionDoc,
+            aggregate: MissionAggregate,
+            zone: ZoneId,
+            locale: Locale
+    ): MissionListItem {
         val title = getMissionTitle(missionDoc, locale)
         val description = getStringById(missionDoc.descriptionId, locale)
         val minVerDialogTitle = getStringById(missionDoc.minVerDialogTitle, locale)
         val minVerDialogMessage = getStringById(missionDoc.minVerDialogMessage, locale)
 
-        val joinDoc = missionRepository.getMissionJoinDoc(uid, missionDoc.missionType, missionDoc.mid)
-        val joinStatus = joinDoc?.status?.let { it } ?: JoinStatus.New
+        val joinStatus = aggregate.getJoinStatus(missionDoc.mid) ?: JoinStatus.New
 
-        val progress = missionQualifier.getProgress(
-                uid,
-                missionDoc.mid,
-                missionDoc.missionTypeEnum
-        )
+        val progress = aggregate.getProgress(missionDoc.mid)
 
-        val important = missionRepository.isImportantMission(missionDoc.missionType, missionDoc.mid)
+        val important = aggregate.isImportantMission(missionDoc.missionType, missionDoc.mid)
 
         val expiredInstant: Instant
         val joinEndInstant: Instant
@@ -177,9 +185,7 @@ class MissionService @Inject constructor(
         }
 
 
-        val rewardExpiredDate = joinDoc?.rewardDocId?.let { rewardDocId ->
-            rewardRepository.getRewardExpiredDate(missionDoc.rewardType, rewardDocId)
-        } ?: Long.MIN_VALUE
+        val rewardExpiredDate = aggregate.getRewardExpiredDate(missionDoc.mid) ?: Long.MIN_VALUE
 
         return MissionListItem(
                 mid = missionDoc.mid,
@@ -291,13 +297,20 @@ class MissionService @Inject constructor(
     ): MissionJoinResult {
         val logInfo = "joinMission: uid=$uid, type=$missionType, mid=$mid, zone=$zone"
 
-        val mission = missionRepository.findMission(missionType, mid) ?: run {
+        // independent reads, issue them together
+        val missionFuture = missionRepository.findMissionAsync(missionType, mid)
+        val joinStatusFuture = missionRepository.getJoinStatusAsync(uid, missionType, mid)
+        // strict count, a cached one can be behind by the joins of other instances
+        val joinCountFuture = missionRepository.getStrictJoinCountAsync(missionType, mid)
+
+        val mission = missionFuture.getUnchecked() ?: run {
             log.info("joinMission: mission not found")
             return MissionJoinResult.Error("mission not found", HttpStatus.NOT_FOUND, JoinFailedReason.NotExist)
         }
 
-        val joinStatus = missionRepository.getJoinStatus(uid, missionType, mid)
-        val joinCount = missionRepository.getJoinCount(missionType, mid)
+        val joinStatus = joinStatusFuture.getUnchecked()
+
+        val joinCount = joinCountFuture.getUnchecked()
 
         when (checkJoinable(mission, joinStatus, joinCount, clock, zone)) {
             MissionJoinableState.NotOpen -> {
@@ -445,30 +458,34 @@ class MissionService @Inject constructor(
             locale: Locale
     ): List<MissionListItem> {
 
-        val missions = missionRepository.findJoinedMissionsByPing(uid, ping)
-        log.info("ping=$ping, missions=${missions.map { "${it.missionType}/${it.mid}" }}")
+        val joinedMissions = missionRepository.findJoinedMissionsByPing(uid, ping)
+        log.info("ping=$ping, missions=${joinedMissions.map { "${it.missionType}/${it.mid}" }}")
 
-        val joinedMissions = missions.filter { isJoined(uid, it.missionType, it.mid) }
+        if (joinedMissions.isEmpty()) {
+            return emptyList()
+        }
+
+        // join status is known from the index, and progress is replaced by the check-in below
+        val aggregate = MissionAggregate(
+                joinDocs = joinedMissions.associate {
+                    it.mid to MissionJoinDoc(uid, it.missionType, it.mid, JoinStatus.Joined)
+                },
+                importantMission = missionRepository.getImportantMission()
+        )
 
-        val joinedMissionListItem = joinedMissions.map { aggregateMissionListItem(uid, it, zone, locale) }
+        val joinedMissionListItem = joinedMissions.map { aggregateMissionListItem(it, aggregate, zone, locale) }
 
-        // update MissionProgressDoc since we only get the message when we update the progress
-        // This is ugly but I don't have time to re-write `aggregateMissionListItem` right now.
-        // TODO: fix the n*n complexity here :(
-        joinedMissions.map {
+        // update MissionProgressDoc since we only get the message when we update the progress,
+        // each mission has its own progress doc so they can be updated side by side
+        val progressDocs = fanOutExecutor.map(joinedMissions) {
             Metrics.event(Metrics.EVENT_MISSION_CHECK_IN, "mid:${it.mid}")
-            val progressDoc = updateProgress(uid, it.missionType, it.mid, zone, locale)
-            for (missionListItem in joinedMissionListItem) {
-                if (missionListItem.mid == progressDoc?.mid) {
-                    missionListItem.progress = progressDoc.toProgressResponse()
-                }
-            }
+            updateProgress(uid, it.missionType, it.mid, zone, locale)
         }
-        return joinedMissionListItem
-    }
 
-    private fun isJoined(uid: String, missionType: String, mid: String): Boolean {
-        return missionRepository.getJoinStatus(uid, missionType, mid) == JoinStatus.Joined
+        joinedMissionListItem.zip(progressDocs).forEach { (missionListItem, progressDoc) ->
+            progressDoc?.let { missionListItem.progress = it.toProgressResponse() }
+        }
+        return joinedMissionListItem
     }
 
     private fun updateProgress(
@@ -39,24 +39,24 @@ class DailyMissionQualifier(private val clock: Clock = Clock.systemUTC()) {
 
         log.info("params=$params")
 
-        val latestRecord = missionRepository.getDailyMissionProgress(uid, mid)
-
-        val newProgress = latestRecord?.let {
-            checkIn(it, zone)
-        } ?: createNewRecord(uid, mid, totalDays)
-
-        if (newProgress != latestRecord) {
-            log.info("insert new progress $newProgress, totalDays=$totalDays")
-
-            val messages = params["message"] as? ArrayList<*>
-            val messageId = messages?.getOrNull(newProgress.currentDayCount - 1)
-            val message = messageId?.let {
-                missionMessageSource.getMessageOrEmpty(it.toString(), locale)
+        // check-in is decided and written in one transaction, so concurrent check-ins can't both advance
+        val newProgress = missionRepository.updateDailyMissionProgress(uid, mid) { latestRecord ->
+            val newProgress = latestRecord?.let {
+                checkIn(it, zone)
+            } ?: createNewRecord(uid, mid, totalDays)
+
+            if (newProgress != latestRecord) {
+                log.info("insert new progress $newProgress, totalDays=$totalDays")
+
+                val messages = params["message"] as? ArrayList<*>
+                val messageId = messages?.getOrNull(newProgress.currentDayCount - 1)
+                val message = messageId?.let {
+                    missionMessageSource.getMessageOrEmpty(it.toString(), locale)
+                }
+                newProgress.dailyMessage = message ?: ""
+                newProgress.totalDays = totalDays
             }
-            newProgress.dailyMessage = message ?: ""
-            newProgress.totalDays = totalDays
-
-            missionRepository.updateDailyMissionProgress(newProgress)
+            newProgress
         }
 
         log.info("progress: current=${newProgress.currentDayCount}, total=$totalDays")
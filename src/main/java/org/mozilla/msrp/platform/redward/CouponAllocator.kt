@@ -0,0 +1,125 @@
+package org.mozilla.msrp.platform.redward
+
+import com.google.cloud.firestore.DocumentReference
+import com.google.cloud.firestore.FieldPath
+import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.Transaction
+import org.mozilla.msrp.platform.firestore.getResultsUnchecked
+import org.mozilla.msrp.platform.firestore.getUnchecked
+import org.mozilla.msrp.platform.metrics.Metrics
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Hand out unclaimed coupons so that concurrent redeems don't fight over the same document.
+ *
+ * Each instance leases a block of unclaimed coupon ids per reward type, starting from a random
+ * point of the id space, and each claim takes a different id from the block. Whether the coupon
+ * is still free is checked again inside the redeem transaction, since blocks of different
+ * instances may overlap. When the block keeps turning up claimed or deleted coupons it is dropped,
+ * and the claim falls back to querying an unclaimed coupon within the transaction.
+ */
+@Named
+class CouponAllocator @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val log = logger()
+
+    private val pools = ConcurrentHashMap<String, ConcurrentLinkedQueue<DocumentReference>>()
+
+    /**
+     * The claim isn't reported here since the transaction body runs again on every retry, pass the
+     * result to [report] once the transaction is committed.
+     *
+     * @return an unclaimed coupon read within [transaction], or a null coupon if the reward type is used up
+     */
+    fun claim(rewardType: String, transaction: Transaction): CouponClaim {
+        val start = clock.millis()
+        val pool = pools.computeIfAbsent(rewardType) { ConcurrentLinkedQueue() }
+
+        var coupon: RewardCouponDoc? = null
+        var staleCandidates = 0
+        for (attempt in 0 until MAX_CLAIM_ATTEMPTS) {
+            val candidate = pool.poll() ?: lease(rewardType, pool) ?: break
+            val snapshot = transaction.get(candidate).getUnchecked()
+            if (snapshot.exists() && snapshot.getString("uid") == "") {
+                coupon = snapshot.toObject(RewardCouponDoc::class.java)
+                break
+            }
+            staleCandidates++
+        }
+
+        if (coupon == null && staleCandidates > 0) {
+            log.info("drop stale coupon pool, type=$rewardType, size=${pool.size}")
+            pool.clear()
+            coupon = claimAnyUnclaimed(rewardType, transaction)
+        }
+
+        return CouponClaim(coupon, rewardType, pool.size, clock.millis() - start)
+    }
+
+    fun report(claim: CouponClaim) {
+        Metrics.event(Metrics.EVENT_COUPON_CLAIM,
+                "type:${claim.rewardType},claimed:${claim.coupon != null},pool:${claim.poolSize},latency:${claim.latencyMillis}")
+    }
+
+    /**
+     * The pool only ran into claimed coupons, ask for any unclaimed one so a null really means used up
+     */
+    private fun claimAnyUnclaimed(rewardType: String, transaction: Transaction): RewardCouponDoc? {
+        val query = firestore.collection(rewardType).whereEqualTo("uid", "").limit(1)
+        return transaction.get(query).getUnchecked()
+                .documents
+                .firstOrNull()
+                ?.toObject(RewardCouponDoc::class.java)
+    }
+
+    /**
+     * Refill [pool] with a new block of unclaimed coupons
+     * @return the first coupon of the new block
+     */
+    private fun lease(rewardType: String, pool: ConcurrentLinkedQueue<DocumentReference>): DocumentReference? {
+        synchronized(pool) {
+            // another request may have refilled it while we were waiting
+            pool.poll()?.let { return it }
+
+            val collection = firestore.collection(rewardType)
+            val unclaimed = collection.whereEqualTo("uid", "").orderBy(FieldPath.documentId())
+
+            // auto ids are random, so is the starting point of each instance
+            val pivot = collection.document().id
+            val afterPivot = unclaimed.startAt(pivot).limit(LEASE_SIZE).getResultsUnchecked()
+            val beforePivot = if (afterPivot.size < LEASE_SIZE) {
+                unclaimed.endBefore(pivot).limit(LEASE_SIZE - afterPivot.size).getResultsUnchecked()
+            } else {
+                emptyList()
+            }
+
+            val block = (afterPivot + beforePivot).map { it.reference }.shuffled()
+            log.info("lease coupons, type=$rewardType, size=${block.size}")
+
+            pool.addAll(block)
+            return pool.poll()
+        }
+    }
+
+    companion object {
+        private const val LEASE_SIZE = 50
+        private const val MAX_CLAIM_ATTEMPTS = 5
+    }
+}
+
+class CouponClaim(
+        val coupon: RewardCouponDoc?,
+        val rewardType: String,
+        val poolSize: Int,
+        val latencyMillis: Long
+)
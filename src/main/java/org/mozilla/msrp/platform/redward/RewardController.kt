@@ -106,26 +106,28 @@ class RedeemController @Inject constructor(val rewardRepository: RewardRepositor
             return ResponseEntity.badRequest().body(CouponUploadResponse.Fail("empty coupon file"))
         }
 
-        val coupons = file.inputStream.bufferedReader().readLines()
-        if (coupons.isEmpty()) {
-            logger.warn("[Reward][uploadCoupons] No content: token[$token] couponName[$couponName] missionType[$missionType] mid[$mid]")
+        val uploadCouponsResult = file.inputStream.bufferedReader().use { reader ->
+            val coupons = reader.lineSequence().iterator()
+            if (!coupons.hasNext()) {
+                logger.warn("[Reward][uploadCoupons] No content: token[$token] couponName[$couponName] missionType[$missionType] mid[$mid]")
 
-            return ResponseEntity.badRequest().body(CouponUploadResponse.Fail("illegal coupon file format, please " +
-                    "separate coupon codes into separated lines"))
-        }
+                return ResponseEntity.badRequest().body(CouponUploadResponse.Fail("illegal coupon file format, please " +
+                        "separate coupon codes into separated lines"))
+            }
 
-        val uploadCouponsResult = rewardRepository.uploadCoupons(
-                coupons = coupons,
-                displayName = displayName,
-                openLink = openLink,
-                couponName = couponName,
-                expiredDate = expiredDate,
-                missionType = missionType,
-                mid = mid,
-                clear = clear
-        )
+            rewardRepository.uploadCoupons(
+                    coupons = coupons.asSequence(),
+                    displayName = displayName,
+                    openLink = openLink,
+                    couponName = couponName,
+                    expiredDate = expiredDate,
+                    missionType = missionType,
+                    mid = mid,
+                    clear = clear
+            )
+        }
         return when (uploadCouponsResult) {
-            is UploadCouponsResult.Success -> ResponseEntity.ok(CouponUploadResponse.Success("${uploadCouponsResult.list.size} coupons uploaded"))
+            is UploadCouponsResult.Success -> ResponseEntity.ok(CouponUploadResponse.Success("${uploadCouponsResult.count} coupons uploaded"))
             UploadCouponsResult.Duplicated -> ResponseEntity(CouponUploadResponse.Fail("couponName  $couponName duplicated"), HttpStatus.CONFLICT)
             UploadCouponsResult.NoMatchingMission -> ResponseEntity(CouponUploadResponse.Fail("Mission $mid not found"), HttpStatus.NOT_FOUND)
         }
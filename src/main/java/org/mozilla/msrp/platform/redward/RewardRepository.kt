@@ -2,10 +2,11 @@ package org.mozilla.msrp.platform.redward
 
 import com.google.api.core.ApiFuture
 import com.google.cloud.firestore.CollectionReference
+import com.google.cloud.firestore.FieldPath
 import com.google.cloud.firestore.Firestore
-import com.google.cloud.firestore.QueryDocumentSnapshot
 import com.google.cloud.firestore.Transaction
-import org.mozilla.msrp.platform.firestore.getBatchIteration
+import org.mozilla.msrp.platform.firestore.BATCH_VOLUME
+import org.mozilla.msrp.platform.firestore.BatchWriter
 import org.mozilla.msrp.platform.firestore.getResultsUnchecked
 import org.mozilla.msrp.platform.firestore.getUnchecked
 import org.mozilla.msrp.platform.firestore.stringToLocalDateTime
@@ -34,7 +35,7 @@ sealed class RedeemResult(val debugInfo: String) {
 
 
 sealed class UploadCouponsResult {
-    class Success(val list: List<RewardCouponDoc>) : UploadCouponsResult()
+    class Success(val count: Int) : UploadCouponsResult()
     object Duplicated : UploadCouponsResult()
     object NoMatchingMission : UploadCouponsResult()
 }
@@ -49,6 +50,9 @@ open class RewardRepository @Inject constructor(
     @Inject
     lateinit var clock: Clock
 
+    @Inject
+    lateinit var couponAllocator: CouponAllocator
+
     private var logger = logger()
 
     /**
@@ -62,6 +66,9 @@ open class RewardRepository @Inject constructor(
      * */
     fun redeem(missionType: String, mid: String, uid: String, zoneId: ZoneId): RedeemResult {
 
+        // the mission lookup doesn't depend on the user check, start it first
+        val findMissionFuture = missionRepository.findMissionAsync(missionType, mid)
+
         if (userRepository.isFxaUser(uid)) {
             return RedeemResult.InvalidReward(
                     "You need to sign In Firefox Account first",
@@ -69,7 +76,7 @@ open class RewardRepository @Inject constructor(
         }
 
         // check if the reward is expired
-        val findMission = missionRepository.findMission(missionType, mid)
+        val findMission = findMissionFuture.getUnchecked()
 
         val rewardType: String = findMission?.rewardType
                 ?: // should be the name of the reward collection
@@ -79,11 +86,17 @@ open class RewardRepository @Inject constructor(
 
         try {
 
+            // claim of the last run of the transaction body, reported after the commit
+            var couponClaim: CouponClaim? = null
+
             // TODO: extract all firebase related class here, and move business logic to a domain class
             val trans: ApiFuture<RedeemResult> = firestore.runTransaction { transaction ->
+                couponClaim = null
 
                 // search for the mission and see its redeem status.
-                val missionJoinDoc = missionRepository.getMissionJoinDoc(uid, missionType, mid)
+                // all reads go through the transaction, the outcome is decided in memory and written in one commit
+                val joinRecord = missionRepository.getMissionJoinRecord(uid, missionType, mid, transaction)
+                val missionJoinDoc = joinRecord?.doc
                 when (missionJoinDoc?.status) {
                     JoinStatus.Redeemed -> {
                         val rewardDocId = missionJoinDoc.rewardDocId
@@ -93,7 +106,7 @@ open class RewardRepository @Inject constructor(
                                         "MissionJoinDoc 's status is Redeemed, but RewardDocId is null ${info(missionJoinDoc)}")
 
                         // return its related RewardDoc, currently we only have Coupon-Reward
-                        val rewardCouponDoc = getRewardDoc(rewardType, rewardDocId)
+                        val rewardCouponDoc = getRewardDoc(rewardType, rewardDocId, transaction)
                                 ?: // shouldn't happen, data error
                                 return@runTransaction RedeemResult.Failure("Can't find your reward", "Found RewardDocId $rewardDocId but no Doc is found ${info(missionJoinDoc)}")
 
@@ -108,25 +121,22 @@ open class RewardRepository @Inject constructor(
                                     "Reward Expired for missionType[$missionType] mid[$mid] uid[$uid]")
                         }
                         // update RewardDoc
-                        val rewardDocId = requestReward(rewardType, transaction)?.rid
+                        val claim = couponAllocator.claim(rewardType, transaction)
+                        couponClaim = claim
+                        val coupon = claim.coupon
+                        val rewardDocId = coupon?.rid
                                 ?: // shouldn't happen, data error
                                 return@runTransaction RedeemResult.UsedUp(
                                         "No reward left",
                                         "No reward left ${info(missionJoinDoc)}")
 
-                        val rewardDoc = consumeRewardDoc(rewardType, uid, mid, rewardDocId, transaction)
+                        val rewardDoc = consumeRewardDoc(rewardType, uid, mid, rewardDocId, coupon, transaction)
 
                         // update MissionJoinDoc
-                        val success = missionRepository.updateMissionJoinDocAfterRedeem(uid, missionType, mid, rewardDocId, transaction)
-                        if (success && rewardDoc != null) {
-                            Metrics.event(Metrics.EVENT_REDEEM_CONSUMED, "mid:$mid")
-                            return@runTransaction RedeemResult.Success(rewardDoc, "Reward consumed! ${info(missionJoinDoc)}")
-
-                        } else {
-                            return@runTransaction RedeemResult.Failure(
-                                    "Can't update Mission Progress",
-                                    "Can't update MissionJoinDoc ${info(missionJoinDoc)}")
-                        }
+                        missionRepository.updateMissionJoinDocAfterRedeem(uid, missionType, mid, joinRecord, rewardDocId, transaction)
+
+                        Metrics.event(Metrics.EVENT_REDEEM_CONSUMED, "mid:$mid")
+                        return@runTransaction RedeemResult.Success(rewardDoc, "Reward consumed! ${info(missionJoinDoc)}")
                     }
                     else -> {
                         // mission in state other than `Completed` or `Redeemed` are not eligible for redeem
@@ -136,7 +146,9 @@ open class RewardRepository @Inject constructor(
                     }
                 }
             }
-            return trans.get()
+            val result = trans.get()
+            couponClaim?.let { couponAllocator.report(it) }
+            return result
         } catch (e: InterruptedException) {
             return RedeemResult.Failure(
                     "Not able to redeem",
@@ -149,17 +161,19 @@ open class RewardRepository @Inject constructor(
         }
     }
 
-    fun getRewardExpiredDate(rewardType: String, rewardDocId: String): Long? {
-        val doc = getRewardDoc(rewardType, rewardDocId)
-        return doc?.expire_date
-    }
-
     private fun info(missionJoinDoc: MissionJoinDoc) =
             "[INFO: mission ${missionJoinDoc.mid}, user ${missionJoinDoc.uid}]"
 
 
-    // consume that reward with user and mission ids
-    private fun consumeRewardDoc(rewardType: String, uid: String, mid: String, docId: String, transaction: Transaction): RewardCouponDoc? {
+    // consume that reward with user and mission ids, the coupon was already read by the transaction
+    private fun consumeRewardDoc(
+            rewardType: String,
+            uid: String,
+            mid: String,
+            docId: String,
+            coupon: RewardCouponDoc,
+            transaction: Transaction
+    ): RewardCouponDoc {
         val document = firestore.collection(rewardType)
                 .document(docId)
         val toEpochMilli = clock.instant().toEpochMilli()
@@ -168,28 +182,16 @@ open class RewardRepository @Inject constructor(
                 "mid" to mid,
                 "updated_timestamp" to toEpochMilli
         ))
-        val rewardCouponDoc = document.getUnchecked().toObject(RewardCouponDoc::class.java)
-        rewardCouponDoc?.uid = uid
-        rewardCouponDoc?.mid = mid
-        rewardCouponDoc?.updated_timestamp = toEpochMilli
+        coupon.uid = uid
+        coupon.mid = mid
+        coupon.updated_timestamp = toEpochMilli
 
-        return rewardCouponDoc
+        return coupon
     }
 
-    // find a reward that has no user bind to it for that reward type.
-    private fun requestReward(rewardType: String, transaction: Transaction): RewardCouponDoc? {
-
-        val query = firestore.collection(rewardType)
-                .whereEqualTo("uid", "")
-                .limit(1)
-        transaction.mutationsSize
-        return transaction.get(query)
-                .getUnchecked().documents.getOrNull(0)?.toObject(RewardCouponDoc::class.java)
-    }
-
-    private fun getRewardDoc(couponType: String, docId: String): RewardCouponDoc? {
-        return firestore.collection(couponType)
-                .document(docId)
+    private fun getRewardDoc(couponType: String, docId: String, transaction: Transaction): RewardCouponDoc? {
+        val document = firestore.collection(couponType).document(docId)
+        return transaction.get(document)
                 .getUnchecked()
                 .toObject(RewardCouponDoc::class.java)
     }
@@ -199,10 +201,13 @@ open class RewardRepository @Inject constructor(
      * Upload coupons for a mission
      * This will check if the mission and the coupon already exist
      *
+     * Coupons are consumed as a stream and written in batches, so the upload never holds the whole
+     * campaign in memory
+     *
      * @return UploadCouponsResult
      * */
     fun uploadCoupons(
-            coupons: List<String>,
+            coupons: Sequence<String>,
             displayName: String,
             openLink: String,
             couponName: String,
@@ -220,49 +225,20 @@ open class RewardRepository @Inject constructor(
             return UploadCouponsResult.NoMatchingMission
         }
 
-        if (!clear && collection.getResultsUnchecked().isNotEmpty()) {
+        if (!clear && collection.limit(1).getResultsUnchecked().isNotEmpty()) {
             logger.warn("[UPLOAD][COUPON] Coupon Name duplicated:$couponName")
             return UploadCouponsResult.Duplicated
         }
 
         clearCollection(collection)
 
-        val flatten = coupons.mapByBatch {
-            batchUpdateCoupons(
-                    displayName = displayName,
-                    openLink = openLink,
-                    coupons = it,
-                    expiredDate = expiredDate,
-                    collection = collection,
-                    mission = mission,
-                    createdTime = createdTime
-            )
-        }.flatten()
-        logger.info("[UPLOAD][COUPON] Success:${flatten.size}")
-        return UploadCouponsResult.Success(flatten)
-    }
+        val expireDate = stringToLocalDateTime(expiredDate)
+                .toInstant(ZoneOffset.UTC)
+                .toEpochMilli()
 
-    private fun clearCollection(collection: CollectionReference) {
-        collection.getResultsUnchecked().mapByBatch { batchDeleteDocuments(it) }
-    }
-
-    private fun batchDeleteDocuments(docs: List<QueryDocumentSnapshot>) {
-        firestore.runTransaction { tran ->
-            docs.map { tran.delete(it.reference) }
-        }
-    }
-
-    private fun batchUpdateCoupons(
-            displayName: String,
-            openLink: String,
-            coupons: List<String>,
-            expiredDate: String,
-            collection: CollectionReference,
-            mission: MissionDoc,
-            createdTime: Long
-    ): List<RewardCouponDoc> {
-        return firestore.runTransaction { tran ->
-            coupons.map { couponCode ->
+        val writer = BatchWriter(firestore, onProgress = { logUploadProgress("Write", couponName, it) })
+        writer.use {
+            coupons.forEach { couponCode ->
                 val docRef = collection.document()
                 val doc = RewardCouponDoc(
                         rid = docRef.id,
@@ -270,28 +246,42 @@ open class RewardRepository @Inject constructor(
                         display_name = displayName,
                         open_link = openLink,
                         code = couponCode,
-                        expire_date = stringToLocalDateTime(expiredDate)
-                                .toInstant(ZoneOffset.UTC)
-                                .toEpochMilli(),
+                        expire_date = expireDate,
                         created_timestamp = createdTime,
                         updated_timestamp = 0
                 )
-                tran.set(docRef, doc)
-                doc
+                it.set(docRef, doc)
+            }
+        }
+        logger.info("[UPLOAD][COUPON] Success:${writer.count}")
+        return UploadCouponsResult.Success(writer.count)
+    }
+
+    /**
+     * Delete page by page, only document names are fetched
+     */
+    private fun clearCollection(collection: CollectionReference) {
+        val page = collection.select(FieldPath.documentId())
+                .orderBy(FieldPath.documentId())
+                .limit(BATCH_VOLUME)
+
+        val writer = BatchWriter(firestore, onProgress = { logUploadProgress("Delete", collection.id, it) })
+        writer.use {
+            var docs = page.getResultsUnchecked()
+            while (docs.isNotEmpty()) {
+                docs.forEach { doc -> it.delete(doc.reference) }
+                docs = page.startAfter(docs.last()).getResultsUnchecked()
             }
-        }.getUnchecked()
+        }
     }
 
-    private fun <T, K> List<T>.mapByBatch(block: (List<T>) -> K): List<K> {
-        val nBatch = getBatchIteration(this)
-        return this.groupByIndex { it % nBatch }.values.map { block(it) }
+    private fun logUploadProgress(action: String, couponName: String, count: Int) {
+        if (count % PROGRESS_LOG_INTERVAL < BATCH_VOLUME) {
+            logger.info("[UPLOAD][COUPON] $action progress:$couponName, $count")
+        }
     }
 
-    private fun <T, K> List<T>.groupByIndex(selector: (Int) -> K): Map<K, List<T>> {
-        return mapIndexed { index, value -> index to value }
-                .groupBy { selector(it.first) }
-                .mapValues { entry ->
-                    entry.value.map { it.second }
-                }
+    companion object {
+        private const val PROGRESS_LOG_INTERVAL = 10_000
     }
 }
@@ -0,0 +1,71 @@
+package org.mozilla.msrp.platform.user
+
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.ListenerRegistration
+import org.mozilla.msrp.platform.common.auth.JwtHelper
+import org.mozilla.msrp.platform.firestore.getResultsUnchecked
+import org.mozilla.msrp.platform.util.logger
+import java.util.concurrent.ConcurrentHashMap
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Admin emails of each role, held in memory and kept current by a snapshot listener on the
+ * collection backing the role
+ */
+@Named
+class AdminRoleRegistry @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    private val log = logger()
+
+    /** collection -> admin emails */
+    private val admins = ConcurrentHashMap<String, Set<String>>()
+    private val registrations = ConcurrentHashMap<String, ListenerRegistration>()
+
+    fun hasRole(role: String, email: String): Boolean {
+        val collection = ROLE_COLLECTIONS[role] ?: return false
+        return getAdmins(collection).contains(email)
+    }
+
+    private fun getAdmins(collection: String): Set<String> {
+        admins[collection]?.let { return it }
+
+        synchronized(registrations) {
+            admins[collection]?.let { return it }
+
+            val emails = toEmails(firestore.collection(collection).getResultsUnchecked())
+            admins[collection] = emails
+            registrations[collection] = firestore.collection(collection).addSnapshotListener { snapshot, error ->
+                if (error != null || snapshot == null) {
+                    log.warn("admin listener failed, collection=$collection", error)
+                    return@addSnapshotListener
+                }
+                admins[collection] = toEmails(snapshot.documents)
+            }
+            return emails
+        }
+    }
+
+    private fun toEmails(snapshots: List<DocumentSnapshot>): Set<String> {
+        return snapshots.mapNotNull { it.getString("email") }.toHashSet()
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        registrations.values.forEach { it.remove() }
+    }
+
+    companion object {
+        private const val COLLECTION_PUBLISH_ADMIN = "publish_admin"
+
+        // msrp admins share the allowlist with publish admins for now
+        private val ROLE_COLLECTIONS = mapOf(
+                JwtHelper.ROLE_PUBLISH_ADMIN to COLLECTION_PUBLISH_ADMIN,
+                JwtHelper.ROLE_MSRP_ADMIN to COLLECTION_PUBLISH_ADMIN
+        )
+    }
+}
@@ -2,7 +2,6 @@ package org.mozilla.msrp.platform.user;
 
 import lombok.extern.log4j.Log4j2;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 import org.springframework.context.annotation.Bean;
 import retrofit2.Retrofit;
 import retrofit2.converter.jackson.JacksonConverterFactory;
@@ -16,19 +15,17 @@ public class FirefoxAccountClientConfiguration {
     @Inject
     FirefoxAccountServiceInfo firefoxAccountServiceInfo;
 
+    @Inject
+    OkHttpClient okHttpClient;
+
 
     @Bean("FxaAuth")
     public FirefoxAccountClient authFirefoxAccountClient() {
         log.info(" --- Bean Creation FxaAuth ---");
 
-        HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
-        interceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
-
-
         return new Retrofit.Builder()
                 .baseUrl(firefoxAccountServiceInfo.getApiToken())
-                .client(client)
+                .client(okHttpClient)
                 .addConverterFactory(JacksonConverterFactory.create())
                 .build()
                 .create(FirefoxAccountClient.class);
@@ -37,14 +34,9 @@ public class FirefoxAccountClientConfiguration {
 
     @Bean("FxaProfile")
     public FirefoxAccountClient profileFirefoxAccountClientFactory() {
-        HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
-        interceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
-
-
         return new Retrofit.Builder()
                 .baseUrl(firefoxAccountServiceInfo.getApiProfile())
-                .client(client)
+                .client(okHttpClient)
                 .addConverterFactory(JacksonConverterFactory.create())
                 .build().create(FirefoxAccountClient.class);
     }
@@ -0,0 +1,117 @@
+package org.mozilla.msrp.platform.user
+
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.Firestore
+import org.mozilla.msrp.platform.firestore.getUnchecked
+import org.mozilla.msrp.platform.user.data.UserActivityDoc
+import org.mozilla.msrp.platform.user.data.UserDoc
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Sign-in count of each user doc over the last [WINDOW_DAYS] days, kept as per-day buckets
+ *
+ * user_sign_in_counter
+ *    |- {userDocId}
+ *          |- backfilled: true
+ *          |- days
+ *               |- 18180: 1       (days since epoch, UTC)
+ *               |- 18183: 2
+ *
+ * The window is made of whole UTC days, today and the 6 days before it. It spans between 6 and 7
+ * times 24 hours depending on the time of day, the activity query it replaced looked back exactly
+ * 168 hours. Buckets falling out of the window are removed when the next sign-in is counted.
+ *
+ * A doc without the backfilled flag is recounted from the activity log in the same transaction
+ * that counts the next sign-in.
+ */
+@Named
+class SignInCounter @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val log = logger()
+
+    private val counters = firestore.collection(COLLECTION_COUNTER)
+
+    /**
+     * Count a sign-in of the user doc now.
+     *
+     * The counter is read, backfilled if needed, and bumped in one transaction, so concurrent
+     * sign-ins each see a different count.
+     *
+     * @return sign-ins within the window before this one
+     */
+    fun recordSignIn(userDocId: String): Int {
+        val counterRef = counters.document(userDocId)
+        val now = clock.millis()
+        val signIns = firestore.collection(COLLECTION_USER_ACTIVITY)
+                .whereEqualTo(UserActivityDoc.KEY_USER_DOC_ID, userDocId)
+                .whereEqualTo(UserDoc.KEY_STATUS, UserDoc.STATUS_SIGN_IN)
+                .whereGreaterThanOrEqualTo(UserDoc.KEY_UPDATED_TIMESTAMP, getFirstDayOfWindow(now) * DAY_MILLIS)
+
+        val (count, backfilled) = firestore.runTransaction { transaction ->
+            val snapshot = transaction.get(counterRef).get()
+            val backfill = snapshot.getBoolean(FIELD_BACKFILLED) != true
+            val days = if (backfill) {
+                toDays(transaction.get(signIns).get().documents.mapNotNull { it.getLong(UserDoc.KEY_UPDATED_TIMESTAMP) })
+            } else {
+                toDays(snapshot)
+            }
+
+            // buckets out of the window are dropped with the write
+            val firstDay = getFirstDayOfWindow(now)
+            val window = days.filterKeys { it >= firstDay }.toMutableMap()
+            val today = toEpochDay(now)
+            window[today] = (window[today] ?: 0) + 1
+
+            transaction.set(counterRef, mapOf(
+                    FIELD_DAYS to window.mapKeys { (day, _) -> "$day" },
+                    FIELD_BACKFILLED to true))
+            countInWindow(days, now) to backfill
+        }.getUnchecked()
+
+        if (backfilled) {
+            log.info("backfill sign-in counter, userDocId=$userDocId, count=$count")
+        }
+        return count
+    }
+
+    private fun toDays(timestamps: List<Long>): Map<Long, Int> {
+        return timestamps.groupBy { toEpochDay(it) }
+                .mapValues { (_, dayTimestamps) -> dayTimestamps.size }
+    }
+
+    private fun toDays(snapshot: DocumentSnapshot): Map<Long, Int> {
+        return (snapshot.get(FIELD_DAYS) as? Map<*, *>)
+                ?.mapNotNull { (day, count) ->
+                    day.toString().toLongOrNull()?.let { it to ((count as? Number)?.toInt() ?: 0) }
+                }
+                ?.toMap()
+                ?: emptyMap()
+    }
+
+    companion object {
+        private const val COLLECTION_COUNTER = "user_sign_in_counter"
+        private const val COLLECTION_USER_ACTIVITY = "user_activity"
+        private const val FIELD_DAYS = "days"
+        private const val FIELD_BACKFILLED = "backfilled"
+
+        private const val WINDOW_DAYS = 7
+        private const val DAY_MILLIS = 24 * 60 * 60 * 1000L
+
+        internal fun countInWindow(days: Map<Long, Int>, now: Long): Int {
+            val firstDay = getFirstDayOfWindow(now)
+            return days.filterKeys { it >= firstDay }.values.sum()
+        }
+
+        internal fun toEpochDay(timestamp: Long) = timestamp / DAY_MILLIS
+
+        private fun getFirstDayOfWindow(now: Long) = toEpochDay(now) - WINDOW_DAYS + 1
+    }
+}
@@ -0,0 +1,102 @@
+package org.mozilla.msrp.platform.user
+
+import com.google.cloud.firestore.DocumentReference
+import com.google.cloud.firestore.Firestore
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.firestore.BATCH_VOLUME
+import org.mozilla.msrp.platform.firestore.BatchWriter
+import org.mozilla.msrp.platform.user.data.UserActivityDoc
+import org.mozilla.msrp.platform.util.logger
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Queue user activities and write them in batches off the request thread.
+ *
+ * Each activity gets its doc id when queued, so a batch that failed is queued again and retried
+ * up to [MAX_ATTEMPTS] times without writing duplicates.
+ */
+@Named
+class UserActivityWriter @Inject constructor(
+        private val firestore: Firestore
+) {
+
+    private val log = logger()
+
+    private val userActivity = firestore.collection(COLLECTION_USER_ACTIVITY)
+    private val queue = LinkedBlockingQueue<QueuedActivity>(QUEUE_CAPACITY)
+
+    private val executor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setNameFormat("user-activity-%d").setDaemon(true).build()
+    )
+
+    init {
+        executor.scheduleWithFixedDelay({ flush() }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+    }
+
+    fun log(activity: UserActivityDoc) {
+        val queued = QueuedActivity(userActivity.document(), activity, 0)
+        if (!queue.offer(queued)) {
+            log.warn("activity queue is full, write directly")
+            write(listOf(queued))
+        }
+    }
+
+    @Synchronized
+    private fun flush() {
+        // failed batches go back to the queue, they wait for the next flush
+        var pending = queue.size
+        while (pending > 0) {
+            val activities = mutableListOf<QueuedActivity>()
+            queue.drainTo(activities, minOf(pending, BATCH_VOLUME))
+            if (activities.isEmpty()) {
+                return
+            }
+            pending -= activities.size
+            write(activities)
+        }
+    }
+
+    private fun write(activities: List<QueuedActivity>) {
+        try {
+            BatchWriter(firestore).use { writer ->
+                activities.forEach { writer.set(it.ref, it.activity) }
+            }
+        } catch (e: Exception) {
+            log.error("write user activities failed, size=${activities.size}", e)
+            retry(activities)
+        }
+    }
+
+    private fun retry(activities: List<QueuedActivity>) {
+        var dropped = 0
+        activities.forEach {
+            if (it.attempts + 1 >= MAX_ATTEMPTS || !queue.offer(QueuedActivity(it.ref, it.activity, it.attempts + 1))) {
+                dropped++
+            }
+        }
+        if (dropped > 0) {
+            log.error("user activities dropped, size=$dropped")
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+        flush()
+    }
+
+    companion object {
+        private const val COLLECTION_USER_ACTIVITY = "user_activity"
+
+        private const val QUEUE_CAPACITY = 10_000
+        private const val FLUSH_INTERVAL_MILLIS = 1000L
+        private const val MAX_ATTEMPTS = 3
+    }
+}
+
+private class QueuedActivity(val ref: DocumentReference, val activity: UserActivityDoc, val attempts: Int)
@@ -0,0 +1,140 @@
+package org.mozilla.msrp.platform.user
+
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.Firestore
+import com.google.common.cache.CacheBuilder
+import org.mozilla.msrp.platform.firestore.getResultsUnchecked
+import org.mozilla.msrp.platform.firestore.getUnchecked
+import org.mozilla.msrp.platform.user.data.UserDoc
+import org.springframework.web.context.request.RequestAttributes
+import org.springframework.web.context.request.RequestContextHolder
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Resolve user docs with as few reads on `users` as possible.
+ *
+ * A doc is loaded at most once per request, and is shared across requests for a short while.
+ * firebase_uid and firefox_uid are mapped to doc ids, so lookups by them become point reads.
+ */
+@Named
+class UserDocResolver @Inject constructor(firestore: Firestore) {
+
+    private val users = firestore.collection(COLLECTION_USER)
+
+    private val records = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(RECORD_CACHE_SECONDS, TimeUnit.SECONDS)
+            .build<String, UserRecord>()
+
+    private val docIdsByFirebaseUid = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterAccess(INDEX_CACHE_MINUTES, TimeUnit.MINUTES)
+            .build<String, String>()
+
+    private val docIdsByFirefoxUid = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterAccess(INDEX_CACHE_MINUTES, TimeUnit.MINUTES)
+            .build<String, String>()
+
+    fun findByUid(uid: String): UserRecord? {
+        return findByDocId(uid)?.takeIf { it.uid == uid }
+                ?: findByQuery(UserDoc.KEY_UID, uid)
+    }
+
+    fun findByFirebaseUid(firebaseUid: String): UserRecord? {
+        docIdsByFirebaseUid.getIfPresent(firebaseUid)?.let { docId ->
+            findByDocId(docId)?.takeIf { it.firebaseUid == firebaseUid }?.let { return it }
+        }
+        return findByQuery(UserDoc.KEY_FIREBASE_UID, firebaseUid)
+    }
+
+    fun findByFirefoxUid(firefoxUid: String): UserRecord? {
+        docIdsByFirefoxUid.getIfPresent(firefoxUid)?.let { docId ->
+            findByDocId(docId)?.takeIf { it.firefoxUid == firefoxUid }?.let { return it }
+        }
+        return findByQuery(UserDoc.KEY_FIREFOX_UID, firefoxUid)
+    }
+
+    /**
+     * Must be called after writing to a user doc
+     */
+    fun invalidate(docId: String) {
+        records.invalidate(docId)
+        getRequestCache()?.remove(docId)
+    }
+
+    private fun findByDocId(docId: String): UserRecord? {
+        val requestCache = getRequestCache()
+        requestCache?.get(docId)?.let { return it }
+
+        val record = records.getIfPresent(docId)
+                ?: users.document(docId).getUnchecked()
+                        .takeIf { it.exists() }
+                        ?.let { UserRecord.fromDocument(it) }
+                        ?.also { remember(it) }
+                ?: return null
+
+        requestCache?.put(docId, record)
+        return record
+    }
+
+    private fun findByQuery(field: String, value: String): UserRecord? {
+        val record = users.whereEqualTo(field, value)
+                .getResultsUnchecked()
+                .firstOrNull()
+                ?.let { UserRecord.fromDocument(it) }
+                ?: return null
+
+        remember(record)
+        getRequestCache()?.put(record.docId, record)
+        return record
+    }
+
+    private fun remember(record: UserRecord) {
+        records.put(record.docId, record)
+        record.firebaseUid?.takeIf { it.isNotEmpty() }?.let { docIdsByFirebaseUid.put(it, record.docId) }
+        record.firefoxUid?.takeIf { it.isNotEmpty() }?.let { docIdsByFirefoxUid.put(it, record.docId) }
+    }
+
+    private fun getRequestCache(): MutableMap<String, UserRecord>? {
+        val attributes = RequestContextHolder.getRequestAttributes() ?: return null
+
+        @Suppress("UNCHECKED_CAST")
+        return attributes.getAttribute(ATTR_REQUEST_CACHE, RequestAttributes.SCOPE_REQUEST) as? MutableMap<String, UserRecord>
+                ?: mutableMapOf<String, UserRecord>().also {
+                    attributes.setAttribute(ATTR_REQUEST_CACHE, it, RequestAttributes.SCOPE_REQUEST)
+                }
+    }
+
+    /**
+     * Fields of a user doc as stored, absent fields are null
+     */
+    data class UserRecord(
+            val docId: String,
+            val uid: String?,
+            val firebaseUid: String?,
+            val firefoxUid: String?,
+            val status: String?
+    ) {
+        companion object {
+            fun fromDocument(snapshot: DocumentSnapshot) = UserRecord(
+                    docId = snapshot.id,
+                    uid = snapshot.getString(UserDoc.KEY_UID),
+                    firebaseUid = snapshot.getString(UserDoc.KEY_FIREBASE_UID),
+                    firefoxUid = snapshot.getString(UserDoc.KEY_FIREFOX_UID),
+                    status = snapshot.getString(UserDoc.KEY_STATUS)
+            )
+        }
+    }
+
+    companion object {
+        private const val COLLECTION_USER = "users"
+        private const val ATTR_REQUEST_CACHE = "userDocResolver.records"
+
+        private const val CACHE_SIZE = 10_000L
+        private const val RECORD_CACHE_SECONDS = 60L
+        private const val INDEX_CACHE_MINUTES = 60L
+    }
+}
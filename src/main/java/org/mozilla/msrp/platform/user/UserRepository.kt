@@ -2,11 +2,11 @@ package org.mozilla.msrp.platform.user
 
 import com.google.cloud.firestore.CollectionReference
 import com.google.cloud.firestore.Firestore
-import com.google.cloud.firestore.QueryDocumentSnapshot
 import com.google.cloud.firestore.SetOptions
 import com.google.firebase.auth.FirebaseAuth
+import org.mozilla.msrp.platform.common.auth.AuthTokenCache
+import org.mozilla.msrp.platform.common.auth.JwtHelper
 import org.mozilla.msrp.platform.firestore.getResultsUnchecked
-import org.mozilla.msrp.platform.firestore.getUnchecked
 import org.mozilla.msrp.platform.firestore.setUnchecked
 import org.mozilla.msrp.platform.metrics.Metrics
 import org.mozilla.msrp.platform.user.data.UserActivityDoc
@@ -20,19 +20,29 @@ import javax.inject.Inject
 class UserRepository @Inject constructor(firestore: Firestore) {
 
     private var users: CollectionReference
-    private var publishAdmin: CollectionReference
-    private var userActivity: CollectionReference
     private val logger = logger()
 
     @Inject
     lateinit var clock: Clock
 
+    @Inject
+    lateinit var authTokenCache: AuthTokenCache
+
+    @Inject
+    lateinit var userDocResolver: UserDocResolver
+
+    @Inject
+    lateinit var signInCounter: SignInCounter
+
+    @Inject
+    lateinit var userActivityWriter: UserActivityWriter
+
+    @Inject
+    lateinit var adminRoleRegistry: AdminRoleRegistry
+
 
     companion object {
         private const val COLLECTION_USER = "users"
-        private const val COLLECTION_USER_ACTIVITY = "user_activity"
-
-        private const val COLLECTION_PUBLISH_ADMIN = "publish_admin"
 
         private const val USER_SUSPEND_THRESHOLD = 3
         private const val USER_SECOND_WARNING = 2
@@ -41,10 +51,6 @@ class UserRepository @Inject constructor(firestore: Firestore) {
 
     init {
         users = firestore.collection(COLLECTION_USER)
-        userActivity = firestore.collection(COLLECTION_USER_ACTIVITY)
-
-        publishAdmin = firestore.collection(COLLECTION_PUBLISH_ADMIN)
-
     }
 
     fun createCustomToken(fxUid: String, additionalClaims: Map<String, String>): String? {
@@ -53,13 +59,14 @@ class UserRepository @Inject constructor(firestore: Firestore) {
 
     fun signInAndUpdateUserDocument(oldFbUid: String, fxUid: String, email: String): LoginResponse {
 
-        val userDocIdFb = findUserDocumentIdByFbUid(oldFbUid)
+        val userDocIdFb = userDocResolver.findByFirebaseUid(oldFbUid)?.docId
         if ((userDocIdFb == null)) {
             logger.error("No such user $oldFbUid in User Document")
             return LoginResponse.Fail("No such user $oldFbUid")
         }
 
-        val userDocIdFxA = findUserDocumentIdByFxUid(fxUid)
+        val userFxA = userDocResolver.findByFirefoxUid(fxUid)
+        val userDocIdFxA = userFxA?.docId
         logger.info("signInAndUpdateUserDocument=== userDocIdFb[$userDocIdFb]====userDocIdFxA[$userDocIdFxA]")
 
         // the same FxA is used to login FxA
@@ -68,19 +75,18 @@ class UserRepository @Inject constructor(firestore: Firestore) {
             logger.info("userDocIdFxA != null")
 
             // if the user is deprecated, fail fast
-            val userDocFxA = findUserDocumentByFxUid(fxUid)
-            if (userDocFxA?.status == UserDoc.STATUS_SUSPEND) {
+            if (userFxA.status == UserDoc.STATUS_SUSPEND) {
                 logger.info("UserDoc[$userDocIdFxA] is ${UserDoc.STATUS_SUSPEND}")
                 logUserActivity(userDocIdFxA, UserDoc.STATUS_SUSPEND)   // suspended user logs in again and is still suspended.
                 return LoginResponse.UserSuspended("UserDoc[$userDocIdFxA] is ${UserDoc.STATUS_SUSPEND}")
             }
-            // get the sign-in count for the last 7 days
-            val signInCountLast7DAYS: Int = signInCountLast7DAYS(userDocIdFxA)
+            // count this sign-in, and get the sign-ins of the last 7 days before it
+            val signInCountLast7DAYS: Int = signInCounter.recordSignIn(userDocIdFxA)
             logger.info("signInCountLast7DAYS [$signInCountLast7DAYS]")
 
             // the user had two records in the past week. Means this time is the third time.
             // we should now suspend the user.
-            if (USER_SUSPEND_THRESHOLD == signInCountLast7DAYS) {
+            if (signInCountLast7DAYS >= USER_SUSPEND_THRESHOLD) {
                 setUserDocStatus(userDocIdFxA, UserDoc.STATUS_SUSPEND)
                 logUserActivity(userDocIdFxA, UserDoc.STATUS_SUSPEND)
                 Metrics.event(Metrics.EVENT_USER_SUSPENDED)
@@ -130,8 +136,10 @@ class UserRepository @Inject constructor(firestore: Firestore) {
                     UserDoc.KEY_STATUS to UserDoc.STATUS_SIGN_IN
             )
             users.document(userDocIdFb).set(updateData, SetOptions.merge())
+            userDocResolver.invalidate(userDocIdFb)
 
             // add account activity
+            signInCounter.recordSignIn(userDocIdFb)
             logUserActivity(userDocIdFb, UserDoc.STATUS_SIGN_IN)
 
             logger.info("UserDoc is promoted [$userDocIdFxA] just logged in")
@@ -143,80 +151,38 @@ class UserRepository @Inject constructor(firestore: Firestore) {
         users.document(currentUserDocId).set(
                 mapOf(UserDoc.KEY_STATUS to status,
                         UserDoc.KEY_UPDATED_TIMESTAMP to clock.millis()), SetOptions.merge())
-    }
 
-
-    private fun signInCountLast7DAYS(existingUserDocId: String): Int {
-        val now = clock.millis()
-        val aWeekAgo = now - 7 * 24 * 60 * 60 * 1000L
-        return userActivity.whereEqualTo(UserActivityDoc.KEY_USER_DOC_ID, existingUserDocId)
-                .whereEqualTo(UserDoc.KEY_STATUS, UserDoc.STATUS_SIGN_IN)
-                .whereGreaterThan(UserDoc.KEY_UPDATED_TIMESTAMP, aWeekAgo)
-                .getResultsUnchecked().size
+        // cached auth results carry the suspension status
+        userDocResolver.invalidate(currentUserDocId)
+        authTokenCache.invalidateUser(currentUserDocId)
     }
 
+
     fun findUserId(fbuid: String, fxuid: String): String? {
-        return if (fxuid.isEmpty()) {
-            findUserIdByFbUid(fbuid)
+        val record = if (fxuid.isEmpty()) {
+            userDocResolver.findByFirebaseUid(fbuid)
         } else {
-            findUserIdByFxUid(fxuid)
+            userDocResolver.findByFirefoxUid(fxuid)
         }
+        return record?.uid
     }
 
-    private fun findUserIdByFxUid(fxUid: String): String? {
-        return users.whereEqualTo(UserDoc.KEY_FIREFOX_UID, fxUid)
-                .getResultsUnchecked()
-                .firstOrNull()
-                ?.getString(UserDoc.KEY_UID)
-    }
-
-    private fun findUserIdByFbUid(fbUid: String): String? {
-        return users.whereEqualTo(UserDoc.KEY_FIREBASE_UID, fbUid)
-                .getResultsUnchecked()
-                .firstOrNull()
-                ?.getString(UserDoc.KEY_UID)
-    }
-
-    private fun findUserDocumentIdByFbUid(fbUid: String): String? {
-        return findUserDocSnapshot(UserDoc.KEY_FIREBASE_UID, fbUid)?.id
-    }
-
-    private fun findUserDocumentIdByFxUid(fxUid: String): String? {
-        return findUserDocSnapshot(UserDoc.KEY_FIREFOX_UID, fxUid)?.id
-    }
-
-    private fun findUserDocumentByFxUid(fxUid: String): UserDoc? {
-        return findUserDocSnapshot(UserDoc.KEY_FIREFOX_UID, fxUid)?.toObject(UserDoc::class.java)
-    }
-
-    private fun findUserDocSnapshot(field: String, fxUid: String): QueryDocumentSnapshot? {
-        return users.whereEqualTo(field, fxUid).getResultsUnchecked().getOrNull(0)
-    }
-
-
     //.toObject(UserDoc::class.java)
     private fun logUserActivity(userDocumentId: String, action: String) {
         UserActivityDoc(userDocumentId, clock.millis(), action).let {
 
-            userActivity.document().set(it)
+            userActivityWriter.log(it)
 
             logger.info("log UserDoc[$userDocumentId] has action [$action] ")
         }
     }
 
     fun isPublishAdmin(email: String): Boolean {
-        if (email.contains("@mozilla.com")) {
-            for (document in publishAdmin.get().getUnchecked().documents) {
-                if (document.getString("email") == email) {
-                    return true
-                }
-            }
-        }
-        return false
+        return email.contains("@mozilla.com") && adminRoleRegistry.hasRole(JwtHelper.ROLE_PUBLISH_ADMIN, email)
     }
 
     fun isMsrpAdmin(email: String): Boolean {
-        return isPublishAdmin(email)
+        return email.contains("@mozilla.com") && adminRoleRegistry.hasRole(JwtHelper.ROLE_MSRP_ADMIN, email)
     }
 
     fun findFirebaseUidByEmail(email: String): String? {
@@ -230,7 +196,7 @@ class UserRepository @Inject constructor(firestore: Firestore) {
     }
 
     fun isFxaUser(uid: String): Boolean {
-        val fxUid = users.whereEqualTo(UserDoc.KEY_UID, uid).getResultsUnchecked().firstOrNull()?.get(UserDoc.KEY_FIREFOX_UID) as? String?
+        val fxUid = userDocResolver.findByUid(uid)?.firefoxUid
         return fxUid?.isEmpty() ?: false
     }
 
@@ -244,12 +210,7 @@ class UserRepository @Inject constructor(firestore: Firestore) {
     }
 
     fun isUserSuspended(uid: String): Boolean {
-        val status = users.whereEqualTo(UserDoc.KEY_UID, uid)
-                .getResultsUnchecked()
-                .firstOrNull()
-                ?.get(UserDoc.KEY_STATUS) as? String?
-
-        return status == UserDoc.STATUS_SUSPEND
+        return userDocResolver.findByUid(uid)?.status == UserDoc.STATUS_SUSPEND
     }
 }
 
@@ -2,9 +2,29 @@ package org.mozilla.msrp.platform.util
 
 import java.security.MessageDigest
 
+// MessageDigest is not thread-safe, each thread reuses its own instance
+private val SHA_256 = ThreadLocal.withInitial { MessageDigest.getInstance("SHA-256") }
+
+private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+/**
+ * @return the lowercase hex SHA-256 of the UTF-8 bytes of this string
+ */
 fun String.hash(): String {
-    val bytes = this.toByteArray()
-    val md = MessageDigest.getInstance("SHA-256")
-    val digest = md.digest(bytes)
-    return digest.fold("", { str, it -> str + "%02x".format(it) })
+    // digest() resets the instance for the next call
+    val digest = SHA_256.get().digest(this.toByteArray())
+    return digest.toHex()
+}
+
+/**
+ * @return two lowercase hex digits per byte, looked up from a table rather than formatted
+ */
+fun ByteArray.toHex(): String {
+    val chars = CharArray(size * 2)
+    for (i in indices) {
+        val value = this[i].toInt() and 0xff
+        chars[i * 2] = HEX_DIGITS[value ushr 4]
+        chars[i * 2 + 1] = HEX_DIGITS[value and 0x0f]
+    }
+    return String(chars)
 }
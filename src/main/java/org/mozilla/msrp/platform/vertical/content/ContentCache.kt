@@ -0,0 +1,127 @@
+package org.mozilla.msrp.platform.vertical.content
+
+import com.google.common.base.Ticker
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheLoader
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.ListenableFutureTask
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Content responses keyed by the resolved query.
+ *
+ * Entries are refreshed when a publish touches their category, see [ContentPublishListener],
+ * and scheduled content is swapped in when it goes live, see [ContentPublishScheduler].
+ * The periodic refresh is only a safety net in case a publish notification is missed.
+ * Refreshes run in the background and keep serving the old content meanwhile.
+ *
+ * Failures, including queries without content, are cached too, so repeated bogus queries don't
+ * reach Firestore. They're refreshed after [FAIL_TTL_MINUTES] instead.
+ */
+@Named
+class ContentCache @Inject constructor(private val contentService: ContentService) {
+
+    private val log = logger()
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val refreshExecutor = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder().setNameFormat("content-refresh-%d").setDaemon(true).build()
+    )
+
+    private val cacheContent = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .refreshAfterWrite(SAFETY_REFRESH_HOURS, TimeUnit.HOURS)
+            .ticker(object : Ticker() {
+                override fun read() = TimeUnit.MILLISECONDS.toNanos(clock.millis())
+            })
+            .recordStats()
+            .build(object : CacheLoader<ContentServiceQueryParam, ContentEntry>() {
+                override fun load(param: ContentServiceQueryParam): ContentEntry {
+                    return ContentEntry(contentService.getContent(param), clock.millis())
+                }
+
+                override fun reload(param: ContentServiceQueryParam, oldValue: ContentEntry): ListenableFuture<ContentEntry> {
+                    val task = ListenableFutureTask.create<ContentEntry> {
+                        val result = contentService.getContent(param)
+                        val old = oldValue.result
+                        // a failed refresh keeps the last good content
+                        if (result is ContentServiceQueryResult.Fail && old is ContentServiceQueryResult.Success) {
+                            log.warn("[Content][Cache]====refresh failed, keep serving ${old.version} for $param")
+                            oldValue
+                        } else {
+                            ContentEntry(result, clock.millis())
+                        }
+                    }
+                    refreshExecutor.execute(task)
+                    return task
+                }
+            })
+
+    companion object {
+        private const val CACHE_SIZE = 200L
+        private const val SAFETY_REFRESH_HOURS = 6L
+        private const val FAIL_TTL_MINUTES = 1L
+    }
+
+    fun get(param: ContentServiceQueryParam): ContentServiceQueryResult {
+        val entry = cacheContent.get(param)
+        if (entry.result is ContentServiceQueryResult.Fail &&
+                clock.millis() - entry.loadedAt > TimeUnit.MINUTES.toMillis(FAIL_TTL_MINUTES)) {
+            // served until the refresh is done, concurrent requests share the same refresh
+            cacheContent.refresh(param)
+        }
+        return entry.result
+    }
+
+    /**
+     * Refresh entries that may serve content of the published [category].
+     * Any locale can fall back to the published one, so all locales of the category are refreshed.
+     *
+     * @param category category name in the DB
+     * @param tag tag of the published content, null to refresh every tag
+     */
+    fun refresh(category: String, tag: String?) {
+        val keys = cacheContent.asMap().keys.filter {
+            contentService.getSafeCategory(it.category) == category && (tag == null || it.tag == null || it.tag == tag)
+        }
+        log.info("[Content][Cache]====publish of $category/$tag refreshes ${keys.size} entries, ${cacheContent.stats()}")
+        keys.forEach { cacheContent.refresh(it) }
+    }
+
+    /**
+     * Swap in content that just went live, without waiting for a reload.
+     * It's served by every entry of its category and tag that now resolves to its locale.
+     */
+    fun activate(category: String, locale: String, tag: String, content: ContentServiceQueryResult.Success) {
+        val keys = cacheContent.asMap().keys.filter {
+            contentService.getSafeCategory(it.category) == category && (it.tag == null || it.tag == tag) &&
+                    contentService.resolveLocale(it) == locale
+        }
+        log.info("[Content][Cache]====${content.version} of $category/$locale/$tag goes live for ${keys.size} entries")
+        val now = clock.millis()
+        keys.forEach { cacheContent.put(it, ContentEntry(content, now)) }
+    }
+
+    fun refreshAll() {
+        cacheContent.asMap().keys.forEach { cacheContent.refresh(it) }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        refreshExecutor.shutdownNow()
+    }
+
+    private class ContentEntry(
+            val result: ContentServiceQueryResult,
+            val loadedAt: Long
+    )
+}
@@ -1,21 +1,21 @@
 package org.mozilla.msrp.platform.vertical.content
 
 import com.fasterxml.jackson.databind.ObjectMapper
-import com.google.common.cache.CacheBuilder
-import com.google.common.cache.CacheLoader
 import org.mozilla.msrp.platform.common.auth.JwtHelper
 import org.mozilla.msrp.platform.util.logger
 import org.mozilla.msrp.platform.vertical.content.data.ContentSubcategory
+import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
 import org.springframework.http.ResponseEntity
 import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.RequestHeader
 import org.springframework.web.bind.annotation.RequestMapping
 import org.springframework.web.bind.annotation.RequestMethod
 import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
 import org.springframework.web.multipart.MultipartFile
 import java.util.concurrent.ExecutionException
-import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 
 
@@ -29,32 +29,22 @@ class ContentController @Inject constructor(private val contentService: ContentS
     @Inject
     private lateinit var jwtHelper: JwtHelper
 
-    companion object {
-        private const val CACHE_SIZE = 10L
-        private const val CACHE_TIME_MINUTES = 15L
-    }
-
-    private val cacheContent = CacheBuilder.newBuilder()
-            .maximumSize(CACHE_SIZE)
-            .refreshAfterWrite(CACHE_TIME_MINUTES, TimeUnit.MINUTES)
-            .recordStats()
-            .build(object : CacheLoader<ContentServiceQueryParam, ContentServiceQueryResult>() {
-                override fun load(param: ContentServiceQueryParam): ContentServiceQueryResult {
-                    return contentService.getContent(param)
-                }
-            })
-
+    @Inject
+    private lateinit var contentCache: ContentCache
 
     @GetMapping("/api/v1/content")
     fun getContent(
             @RequestParam(value = "category") category: String,
             @RequestParam(value = "locale") locale: String,
-            @RequestParam(required = false) tag: String?
+            @RequestParam(required = false) tag: String?,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) ifNoneMatch: String?,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) acceptEncoding: String?
     ): ResponseEntity<Any> {
+        val param = contentService.resolveQuery(ContentServiceQueryParam(category, locale, tag))
         return try {
-            when (val result = cacheContent.get(ContentServiceQueryParam(category, locale, tag))) {
+            when (val result = contentCache.get(param)) {
                 is ContentServiceQueryResult.InvalidParam -> ResponseEntity.status(HttpStatus.BAD_REQUEST).body(result.message)
-                is ContentServiceQueryResult.Success -> ResponseEntity.status(HttpStatus.OK).body(ContentResponse(result.version, result.tag, result.data.subcategories))
+                is ContentServiceQueryResult.Success -> payloadResponse(result.payload, ifNoneMatch, acceptEncoding)
                 is ContentServiceQueryResult.Fail -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result.message)
             }
         } catch (e: ExecutionException) {
@@ -63,6 +53,26 @@ class ContentController @Inject constructor(private val contentService: ContentS
         }
     }
 
+    private fun payloadResponse(payload: ContentPayload, ifNoneMatch: String?, acceptEncoding: String?): ResponseEntity<Any> {
+        val gzip = payload.gzip?.takeIf { acceptEncoding?.contains("gzip") == true }
+        val etag = if (gzip != null) payload.gzipEtag else payload.etag
+        if (payload.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build()
+        }
+        val builder = ResponseEntity.status(HttpStatus.OK)
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+        return if (gzip != null) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzip)
+        } else {
+            builder.body(payload.json)
+        }
+    }
+
     // ======================== ADMIN ======================== START
     @GetMapping("/api/v1/content/publish")
     fun publishContent(
@@ -0,0 +1,179 @@
+package org.mozilla.msrp.platform.vertical.content
+
+import com.google.common.cache.CacheBuilder
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLongArray
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Resolution table from a client locale to the DB locale that actually has content for a category and tag.
+ *
+ * The table is built from the live (category, locale, tag) combinations in `publish`, so a content
+ * request only needs one read for the locale it will end up serving. It's rebuilt after a publish,
+ * and every [TABLE_TTL_MINUTES] so scheduled publishes are picked up. Locales without content are
+ * cached as well, so unknown tags or categories don't cost a read.
+ *
+ * Only the first table is built on a request thread. Later rebuilds run in the background, and
+ * requests keep using the previous table until the new one is swapped in.
+ */
+@Named
+class ContentLocaleResolver @Inject constructor(private val contentRepository: ContentRepository) {
+
+    private val log = logger()
+
+    @Inject
+    lateinit var clock: Clock
+
+    @Volatile
+    private var table: PublishedTable? = null
+
+    @Volatile
+    private var staleReported = false
+
+    @Volatile
+    private var invalidatedAt = 0L
+
+    private val rebuilding = AtomicBoolean()
+    private val rebuildExecutor = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder().setNameFormat("content-locale-table-%d").setDaemon(true).build()
+    )
+
+    private val resolutions = CacheBuilder.newBuilder()
+            .maximumSize(RESOLUTION_CACHE_SIZE)
+            .recordStats()
+            .build<ResolutionKey, Resolution>()
+
+    // resolutions landing on (hits) or passing over (misses) each fallback tier
+    private val tierHits = AtomicLongArray(MAX_TIERS)
+    private val tierMisses = AtomicLongArray(MAX_TIERS)
+
+    companion object {
+        private const val TABLE_TTL_MINUTES = 15L
+        private const val MIN_REBUILD_INTERVAL_SECONDS = 30L
+        private const val RESOLUTION_CACHE_SIZE = 1000L
+        private const val MAX_TIERS = 3
+    }
+
+    /**
+     * @param candidates DB locales to try in order, at most [MAX_TIERS] of them
+     *
+     * @return the first candidate that has content, null if none of them has
+     */
+    fun resolve(category: String, tag: String?, candidates: List<String>): String? {
+        val current = getTable()
+        val key = ResolutionKey(category, tag, candidates)
+        val resolution = resolutions.get(key) { current.resolve(key) }
+        for (tier in 0 until minOf(resolution.tier, MAX_TIERS)) {
+            tierMisses.incrementAndGet(tier)
+        }
+        if (resolution.tier < MAX_TIERS) {
+            tierHits.incrementAndGet(resolution.tier)
+        }
+        return resolution.locale
+    }
+
+    /**
+     * Rebuild the table in the background, after a publish
+     */
+    fun invalidate() {
+        invalidatedAt = clock.millis()
+        rebuild()
+    }
+
+    /**
+     * A resolved locale turned out to have no content. Clients can cause this at will, so the table is
+     * rebuilt at most once every [MIN_REBUILD_INTERVAL_SECONDS].
+     */
+    fun reportStale() {
+        staleReported = true
+    }
+
+    fun stats(): ContentLocaleStats {
+        val cacheStats = resolutions.stats()
+        return ContentLocaleStats(
+                cacheStats.hitCount(),
+                cacheStats.missCount(),
+                (0 until MAX_TIERS).map { tierHits.get(it) },
+                (0 until MAX_TIERS).map { tierMisses.get(it) })
+    }
+
+    private fun getTable(): PublishedTable {
+        val current = table ?: return synchronized(this) { table ?: build() }
+        if (current.isExpired(clock.millis())) {
+            rebuild()
+        }
+        return current
+    }
+
+    private fun rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return
+        }
+        rebuildExecutor.execute {
+            try {
+                build()
+            } catch (e: Exception) {
+                log.error("[Content][LocaleTable]====rebuild failed, keep the current table", e)
+            } finally {
+                rebuilding.set(false)
+            }
+        }
+    }
+
+    private fun build(): PublishedTable {
+        // a publish during the read leaves the new table expired, see isExpired
+        val startedAt = clock.millis()
+        staleReported = false
+        val published = contentRepository.getPublishedLocales()
+        val built = PublishedTable(published, startedAt)
+        table = built
+        resolutions.invalidateAll()
+        log.info("[Content][LocaleTable]====rebuilt with ${published.size} entries, ${stats()}")
+        return built
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        rebuildExecutor.shutdownNow()
+    }
+
+    private fun PublishedTable.isExpired(now: Long): Boolean {
+        val age = now - builtAt
+        return builtAt <= invalidatedAt ||
+                age >= TimeUnit.MINUTES.toMillis(TABLE_TTL_MINUTES) ||
+                (staleReported && age >= TimeUnit.SECONDS.toMillis(MIN_REBUILD_INTERVAL_SECONDS))
+    }
+
+    private class PublishedTable(published: Set<ContentRepoQuery>, val builtAt: Long) {
+
+        // a request without tag is served by any tag of that category and locale
+        private val entries = published + published.map { it.copy(tag = null) }
+
+        fun resolve(key: ResolutionKey): Resolution {
+            key.candidates.forEachIndexed { tier, locale ->
+                if (entries.contains(ContentRepoQuery(key.category, locale, key.tag))) {
+                    return Resolution(locale, tier)
+                }
+            }
+            return Resolution(null, key.candidates.size)
+        }
+    }
+
+    private data class ResolutionKey(val category: String, val tag: String?, val candidates: List<String>)
+
+    private class Resolution(val locale: String?, val tier: Int)
+}
+
+data class ContentLocaleStats(
+        val tableHits: Long,
+        val tableMisses: Long,
+        val tierHits: List<Long>,
+        val tierMisses: List<Long>
+)
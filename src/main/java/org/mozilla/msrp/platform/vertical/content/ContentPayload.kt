@@ -0,0 +1,50 @@
+package org.mozilla.msrp.platform.vertical.content
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * The client JSON of a published content, serialized once when it's loaded into the cache.
+ *
+ * The identity and gzip bodies are different representations, so each has its own strong ETag,
+ * derived from the publish_timestamp of the served document.
+ *
+ * @param json the response body
+ * @param gzip the gzipped body, null if the body is too small to be worth compressing
+ */
+class ContentPayload(
+        validator: String,
+        val json: ByteArray,
+        val gzip: ByteArray?
+) {
+
+    val etag = "\"$validator\""
+    val gzipEtag = "\"$validator-gzip\""
+
+    /**
+     * Either ETag matches, both bodies carry the same content
+     */
+    fun matches(ifNoneMatch: String?): Boolean {
+        if (ifNoneMatch == null) {
+            return false
+        }
+        return ifNoneMatch.trim() == "*" || ifNoneMatch.split(",").any { it.trim() == etag || it.trim() == gzipEtag }
+    }
+
+    companion object {
+        private const val GZIP_MIN_SIZE = 1024
+
+        fun encode(mapper: ObjectMapper, response: ContentResponse): ContentPayload {
+            val json = mapper.writeValueAsBytes(response)
+            val gzip = if (json.size >= GZIP_MIN_SIZE) gzip(json) else null
+            return ContentPayload("${response.version}-${Integer.toHexString(response.tag.hashCode())}", json, gzip)
+        }
+
+        private fun gzip(bytes: ByteArray): ByteArray {
+            val out = ByteArrayOutputStream(bytes.size / 4)
+            GZIPOutputStream(out).use { it.write(bytes) }
+            return out.toByteArray()
+        }
+    }
+}
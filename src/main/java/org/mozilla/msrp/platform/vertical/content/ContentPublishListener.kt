@@ -0,0 +1,68 @@
+package org.mozilla.msrp.platform.vertical.content
+
+import com.google.cloud.firestore.ListenerRegistration
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.Executors
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Refreshes the content served by this instance when a publish happens on any instance.
+ *
+ * Publishes are picked up from publish_history. Scheduled publishes are handed to
+ * [ContentPublishScheduler].
+ */
+@Named
+class ContentPublishListener @Inject constructor(
+        private val contentRepository: ContentRepository,
+        private val contentCache: ContentCache,
+        private val localeResolver: ContentLocaleResolver,
+        private val publishScheduler: ContentPublishScheduler
+) {
+
+    private val log = logger()
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val executor = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder().setNameFormat("content-publish-%d").setDaemon(true).build()
+    )
+
+    private var registration: ListenerRegistration? = null
+
+    @PostConstruct
+    fun start() {
+        registration = contentRepository.addPublishListener(clock.millis(), executor) { onPublished(it) }
+    }
+
+    private fun onPublished(event: PublishEvent) {
+        if (!publishScheduler.schedule(event)) {
+            refresh(event)
+        }
+    }
+
+    private fun refresh(event: PublishEvent) {
+        try {
+            localeResolver.invalidate()
+            val category = event.category
+            if (category == null) {
+                contentCache.refreshAll()
+            } else {
+                contentCache.refresh(category, event.tag)
+            }
+        } catch (e: Exception) {
+            log.error("[Content][publish]====refresh failed for ${event.publishDocId}", e)
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        registration?.remove()
+        executor.shutdownNow()
+    }
+}
@@ -0,0 +1,98 @@
+package org.mozilla.msrp.platform.vertical.content
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+
+/**
+ * Activates scheduled publishes at their publish_timestamp.
+ *
+ * Pending publishes are loaded once on startup, later ones come from [ContentPublishListener].
+ * On activation the published doc is read by id and swapped into [ContentCache], so the content
+ * is served from the scheduled moment on.
+ */
+@Named
+class ContentPublishScheduler @Inject constructor(
+        private val contentRepository: ContentRepository,
+        private val contentService: ContentService,
+        private val contentCache: ContentCache,
+        private val localeResolver: ContentLocaleResolver
+) {
+
+    private val log = logger()
+
+    @Inject
+    lateinit var clock: Clock
+
+    private val timer = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setNameFormat("content-schedule-%d").setDaemon(true).build()
+    )
+
+    /** publishDocId -> pending activation */
+    private val pending = ConcurrentHashMap<String, ScheduledFuture<*>>()
+
+    @PostConstruct
+    fun start() {
+        timer.execute {
+            try {
+                contentRepository.getPendingPublishes(clock.millis()).forEach { schedule(it) }
+            } catch (e: Exception) {
+                log.error("[Content][schedule]====loading pending publishes failed", e)
+            }
+        }
+    }
+
+    /**
+     * @return false if the publish is not in the future, and should be applied right away
+     */
+    fun schedule(event: PublishEvent): Boolean {
+        val publishDocId = event.publishDocId ?: return false
+        val delay = (event.publishTimestamp ?: return false) - clock.millis()
+        if (delay <= 0) {
+            return false
+        }
+        log.info("[Content][schedule]====$publishDocId goes live in ${delay}ms")
+        // content is live once publish_timestamp is strictly in the past
+        val activation = timer.schedule({ activate(event) }, delay + 1, TimeUnit.MILLISECONDS)
+        // a re-scheduled publish replaces its previous activation
+        pending.put(publishDocId, activation)?.cancel(false)
+        return true
+    }
+
+    private fun activate(event: PublishEvent) {
+        val publishDocId = event.publishDocId ?: return
+        pending.remove(publishDocId)
+        try {
+            localeResolver.invalidate()
+            val result = contentRepository.getPublishedContent(publishDocId)
+            if (result !is ContentRepoResult.Success || result.version != event.publishTimestamp) {
+                log.warn("[Content][schedule]====$publishDocId changed since it was scheduled, skip")
+                return
+            }
+            val category = event.category
+            val locale = event.locale
+            val content = contentService.toQueryResult(result)
+            if (category == null || locale == null || content !is ContentServiceQueryResult.Success) {
+                contentCache.refreshAll()
+                return
+            }
+            contentCache.activate(category, locale, result.tag, content)
+
+        } catch (e: Exception) {
+            log.error("[Content][schedule]====activating $publishDocId failed", e)
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        timer.shutdownNow()
+    }
+}
@@ -3,10 +3,15 @@ package org.mozilla.msrp.platform.vertical.content
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.api.core.ApiFuture
 import com.google.cloud.firestore.CollectionReference
+import com.google.cloud.firestore.DocumentChange
+import com.google.cloud.firestore.DocumentReference
 import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.EventListener
 import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.ListenerRegistration
 import com.google.cloud.firestore.Query
 import com.google.cloud.firestore.QueryDocumentSnapshot
+import com.google.cloud.firestore.Transaction
 import com.google.cloud.storage.Storage
 import com.google.cloud.storage.StorageException
 import org.mozilla.msrp.platform.firestore.getResultsUnchecked
@@ -20,6 +25,7 @@ import java.text.SimpleDateFormat
 import java.time.Clock
 import java.time.Instant
 import java.util.TimeZone
+import java.util.concurrent.Executor
 import javax.inject.Inject
 
 @Repository
@@ -28,6 +34,7 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
 
     private var publish: CollectionReference
     private var publishHistory: CollectionReference
+    private var publishedLocales: DocumentReference
 
     private val log = logger()
 
@@ -40,6 +47,9 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
     companion object {
         private const val COLLECTION_PUBLISH = "publish"
         private const val COLLECTION_PUBLISH_HISTORY = "publish_history"
+        private const val COLLECTION_PUBLISH_CONTROL = "publish_control"
+        private const val DOC_PUBLISHED_LOCALES = "published_locales"
+        private const val FIELD_ENTRIES = "entries"
         val simpleDateFormat = SimpleDateFormat("yyyy-MM-dd").apply {
             this.timeZone = TimeZone.getTimeZone("UTC");
         }
@@ -48,6 +58,7 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
     init {
         publish = firestore.collection(COLLECTION_PUBLISH)
         publishHistory = firestore.collection(COLLECTION_PUBLISH_HISTORY)
+        publishedLocales = firestore.collection(COLLECTION_PUBLISH_CONTROL).document(DOC_PUBLISHED_LOCALES)
     }
 
     // This version of getContent gets content from Firestore, not Cloud Storage
@@ -60,17 +71,7 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
                 log.warn(message)
                 return ContentRepoResult.Empty(message)
             }
-            val publishDoc = publishDocId.toObject(PublishDoc::class.java)
-            val publishTimestamp = publishDoc.publish_timestamp
-            val data = publishDoc.data
-            val tag = publishDoc.tag
-            if (data == null || publishTimestamp == null || tag == null) {
-                val message = "[Content]====getContentFromDB====No such Document===="
-                log.error("$message$publishDocId")
-                ContentRepoResult.Fail(message)
-            } else {
-                ContentRepoResult.Success(publishTimestamp, tag, data)
-            }
+            toContentRepoResult(publishDocId.id, publishDocId.toObject(PublishDoc::class.java))
         } catch (e: StorageException) {
             val message = "error loading games"
             log.error("[Content]====$message:${e.localizedMessage}")
@@ -78,6 +79,45 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
         }
     }
 
+    /**
+     * Content of a single publish, read by id so no query is involved
+     */
+    fun getPublishedContent(publishDocId: String): ContentRepoResult {
+        return try {
+            val publishDoc = publish.document(publishDocId).getUnchecked().toObject(PublishDoc::class.java)
+            toContentRepoResult(publishDocId, publishDoc)
+        } catch (e: Exception) {
+            log.error("[Content]====getContentByPublishDocId====$publishDocId:$e")
+            ContentRepoResult.Fail("error loading content")
+        }
+    }
+
+    private fun toContentRepoResult(publishDocId: String, publishDoc: PublishDoc?): ContentRepoResult {
+        val publishTimestamp = publishDoc?.publish_timestamp
+        val data = publishDoc?.data
+        val tag = publishDoc?.tag
+        return if (data == null || publishTimestamp == null || tag == null) {
+            val message = "[Content]====getContentFromDB====No such Document===="
+            log.error("$message$publishDocId")
+            ContentRepoResult.Fail(message)
+        } else {
+            ContentRepoResult.Success(publishTimestamp, tag, data)
+        }
+    }
+
+    /**
+     * Publishes scheduled after [now]. Only the content key and publish time are fetched.
+     */
+    fun getPendingPublishes(now: Long): List<PublishEvent> {
+        return publish.whereGreaterThan("publish_timestamp", now)
+                .select("category", "locale", "tag", "publish_timestamp")
+                .getResultsUnchecked()
+                .map {
+                    PublishEvent(it.id, it.getString("category"), it.getString("locale"),
+                            it.getString("tag"), it.getLong("publish_timestamp"))
+                }
+    }
+
     fun addContent(request: AddContentRequest): String? {
         try {
             val publishDoc = PublishDoc(
@@ -112,8 +152,13 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
             firestore.runTransaction { transaction ->
                 snapshot = transaction.get(docRef)
                 publishDoc = snapshot?.getUnchecked()?.toObject(PublishDoc::class.java)
+                val locales = readPublishedLocales(transaction)
 
                 transaction.update(docRef, "publish_timestamp", timestamp)
+                publishDoc?.takeIf { isValid(it) }?.let {
+                    val query = ContentRepoQuery(it.category ?: "", it.locale ?: "", it.tag)
+                    transaction.set(publishedLocales, toPublishedLocalesFields(addPublish(locales, query, timestamp)))
+                }
                 log.info("Success: publish: $publishDocId/$editor/$schedule")
 
             }.getUnchecked()
@@ -126,7 +171,7 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
                 log.error("[Content][publish]====$publishDocId/$editor/$schedule")
                 return ContentRepositoryPublishResult.Fail("Content is not valid")
             }
-            updatePublishHistory(publishDocId, editor)
+            updatePublishHistory(publishDocId, editor, publishDoc, timestamp)
 
             return ContentRepositoryPublishResult.Success(publishDoc?.category ?: "", publishDoc?.locale
                     ?: "") // already checked
@@ -140,14 +185,43 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
         return ContentRepositoryPublishResult.Fail(errorMessage)
     }
 
-    private fun updatePublishHistory(publishDocId: String, editor: String) {
+    // the content key and publish time are recorded too, so other instances know what to refresh
+    private fun updatePublishHistory(publishDocId: String, editor: String, publishDoc: PublishDoc?, publishTimestamp: Long) {
         publishHistory.document().set(
                 mapOf("publishDocId" to publishDocId,
                         "created_timestamp" to clock.millis(),
-                        "editor" to editor
+                        "editor" to editor,
+                        "category" to publishDoc?.category,
+                        "locale" to publishDoc?.locale,
+                        "tag" to publishDoc?.tag,
+                        "publish_timestamp" to publishTimestamp
                 )).getUnchecked()
     }
 
+    /**
+     * Listen to publishes recorded after [since], on any instance
+     */
+    fun addPublishListener(since: Long, executor: Executor, onPublished: (PublishEvent) -> Unit): ListenerRegistration {
+        return publishHistory.whereGreaterThan("created_timestamp", since)
+                .addSnapshotListener(executor, EventListener { snapshot, error ->
+                    if (error != null || snapshot == null) {
+                        log.warn("[Content][publish listener]====failed", error)
+                        return@EventListener
+                    }
+                    snapshot.documentChanges
+                            .filter { it.type == DocumentChange.Type.ADDED }
+                            .forEach {
+                                val doc = it.document
+                                onPublished(PublishEvent(
+                                        doc.getString("publishDocId"),
+                                        doc.getString("category"),
+                                        doc.getString("locale"),
+                                        doc.getString("tag"),
+                                        doc.getLong("publish_timestamp")))
+                            }
+                })
+    }
+
     private fun getLatestPublish(category: String, locale: String, tag: String?): QueryDocumentSnapshot? {
         var search = publish.whereEqualTo("category", category)
                 .whereEqualTo("locale", locale)
@@ -160,6 +234,78 @@ open class ContentRepository @Inject constructor(private var storage: Storage,
                 .limit(1).getResultsUnchecked().firstOrNull()
     }
 
+    /**
+     * All (category, locale, tag) combinations that have live content.
+     *
+     * They are kept in a single `publish_control/published_locales` doc, updated with each publish,
+     * so this is one read instead of a scan of `publish`. The doc is seeded from `publish` on first use.
+     */
+    fun getPublishedLocales(): Set<ContentRepoQuery> {
+        val snapshot = publishedLocales.getUnchecked()
+        val locales = if (snapshot.exists()) {
+            toPublishedLocales(snapshot)
+        } else {
+            firestore.runTransaction { transaction ->
+                readPublishedLocales(transaction).also {
+                    transaction.set(publishedLocales, toPublishedLocalesFields(it))
+                }
+            }.getUnchecked()
+        }
+
+        val now = clock.millis()
+        return locales.filterValues { it < now }.keys
+    }
+
+    // (category, locale, tag) to the time it went live, or will go live if it's only scheduled
+    private fun readPublishedLocales(transaction: Transaction): Map<ContentRepoQuery, Long> {
+        val snapshot = transaction.get(publishedLocales).get()
+        if (snapshot.exists()) {
+            return toPublishedLocales(snapshot)
+        }
+
+        log.info("[Content]====seeding $DOC_PUBLISHED_LOCALES from $COLLECTION_PUBLISH")
+        val published = transaction.get(publish.whereGreaterThan("publish_timestamp", 0L)
+                .select("category", "locale", "tag", "publish_timestamp")).get()
+        val locales = mutableMapOf<ContentRepoQuery, Long>()
+        published.documents.forEach {
+            val category = it.getString("category") ?: return@forEach
+            val locale = it.getString("locale") ?: return@forEach
+            val timestamp = it.getLong("publish_timestamp") ?: return@forEach
+            val query = ContentRepoQuery(category, locale, it.getString("tag"))
+            locales[query] = minOf(locales[query] ?: timestamp, timestamp)
+        }
+        return locales
+    }
+
+    // content that is live already stays live, otherwise the earliest publish wins
+    private fun addPublish(locales: Map<ContentRepoQuery, Long>, query: ContentRepoQuery, timestamp: Long): Map<ContentRepoQuery, Long> {
+        val current = locales[query]
+        if (current != null && (current < clock.millis() || current <= timestamp)) {
+            return locales
+        }
+        return locales + (query to timestamp)
+    }
+
+    private fun toPublishedLocales(snapshot: DocumentSnapshot): Map<ContentRepoQuery, Long> {
+        val entries = snapshot.get(FIELD_ENTRIES) as? List<*> ?: return emptyMap()
+        return entries.mapNotNull { entry ->
+            val fields = entry as? Map<*, *> ?: return@mapNotNull null
+            val category = fields["category"] as? String ?: return@mapNotNull null
+            val locale = fields["locale"] as? String ?: return@mapNotNull null
+            val timestamp = fields["publish_timestamp"] as? Number ?: return@mapNotNull null
+            ContentRepoQuery(category, locale, fields["tag"] as? String) to timestamp.toLong()
+        }.toMap()
+    }
+
+    private fun toPublishedLocalesFields(locales: Map<ContentRepoQuery, Long>): Map<String, Any> {
+        return mapOf(FIELD_ENTRIES to locales.map { (query, timestamp) ->
+            mapOf("category" to query.category,
+                    "locale" to query.locale,
+                    "tag" to query.tag,
+                    "publish_timestamp" to timestamp)
+        })
+    }
+
     fun getContentByPublishDocId(publishDocId: String): PublishDoc? {
         return publish.document(publishDocId).getUnchecked().toObject(PublishDoc::class.java)
     }
@@ -205,6 +351,18 @@ sealed class ContentRepoResult {
     class Empty(message: String) : Fail(message)
 }
 
+/**
+ * A publish recorded in publish_history. Entries written before the content key was recorded
+ * only have [publishDocId].
+ */
+class PublishEvent(
+        val publishDocId: String?,
+        val category: String?,
+        val locale: String?,
+        val tag: String?,
+        val publishTimestamp: Long?
+)
+
 data class ContentRepoQuery(
         val category: String,
         val locale: String,
@@ -3,9 +3,11 @@ package org.mozilla.msrp.platform.vertical.content
 import com.fasterxml.jackson.core.JsonProcessingException
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.annotations.VisibleForTesting
+import com.google.common.cache.CacheBuilder
 import org.apache.commons.beanutils.ConversionException
 import org.mozilla.msrp.platform.util.logger
 import org.mozilla.msrp.platform.vertical.content.data.Category
+import org.mozilla.msrp.platform.vertical.content.data.ContentCsvException
 import org.mozilla.msrp.platform.vertical.content.data.PublishDoc
 import org.mozilla.msrp.platform.vertical.content.data.parseContent
 import org.springframework.web.multipart.MultipartFile
@@ -23,6 +25,13 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
     @Inject
     lateinit var mapper: ObjectMapper
 
+    @Inject
+    lateinit var localeResolver: ContentLocaleResolver
+
+    private val localeCandidates = CacheBuilder.newBuilder()
+            .maximumSize(LOCALE_CACHE_SIZE)
+            .build<String, List<String>>()
+
     private val categoryMapping = hashMapOf(
             "apkGame" to "game_apk",
             "html5Game" to "game_html5",
@@ -34,7 +43,7 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
     private val fallbackLanguageList = listOf("eng", "in", "zh")
 
     // check category and locale. If they are valid, return the safe category. (keep locale as is)
-    private fun getSafeCategory(category: String): String? {
+    fun getSafeCategory(category: String): String? {
         return categoryMapping[category]
     }
 
@@ -58,8 +67,8 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
     @VisibleForTesting
     fun fallbackLocale(locale: String): String {
         try {
+            val inputLanguage = Locale.Builder().setLanguageTag(locale).build().language
             for (supportLanguage in fallbackLanguageList) {
-                val inputLanguage = Locale.Builder().setLanguageTag(locale).build().language
                 if (inputLanguage == supportLanguage) {
                     log.info("$locale fallback to $supportLanguage cause they're all $inputLanguage")
                     return supportLanguage
@@ -73,29 +82,63 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
         return DEFAULT_LOCALE
     }
 
+    /**
+     * DB locales to try for a client locale, in order: the safe locale, its language, then [DEFAULT_LOCALE]
+     */
+    private fun getLocaleCandidates(locale: String): List<String> {
+        return localeCandidates.get(locale) {
+            listOf(getSafeLocale(locale), fallbackLocale(locale), DEFAULT_LOCALE).distinct()
+        }
+    }
+
+    /**
+     * Requests only differ by what [getSafeLocale] makes of their locale, so the cache is keyed by that.
+     * The safe locale has the same fallback candidates as the original one.
+     */
+    fun resolveQuery(param: ContentServiceQueryParam): ContentServiceQueryParam {
+        return param.copy(locale = getLocaleCandidates(param.locale).first())
+    }
+
     fun getContent(param: ContentServiceQueryParam): ContentServiceQueryResult {
         val safeCategory = getSafeCategory(param.category)
-        val safeLocale = getSafeLocale(param.locale)
         if (safeCategory == null) {
             val message = "Not supported parameters for shopping: $param"
             log.warn("[ContentService][getContent]====$message")
             return ContentServiceQueryResult.InvalidParam(message)
         }
-        // check if we support the specific locale
-        var result = contentRepository.getContentFromDB(ContentRepoQuery(safeCategory, safeLocale, param.tag))
-        // then try to fallback that locale
-        if (result is ContentRepoResult.Empty){
-            val fallbackLocale = fallbackLocale(param.locale)
-            log.warn("[ContentService][getContent retry]====$param====with fallbackLocale:$fallbackLocale")
-            result = contentRepository.getContentFromDB(ContentRepoQuery(safeCategory, fallbackLocale, param.tag))
+        val candidates = getLocaleCandidates(param.locale)
+        // the resolution table knows which locale has content, so only that one is read
+        val resolvedLocale = localeResolver.resolve(safeCategory, param.tag, candidates)
+        var result = if (resolvedLocale == null) {
+            ContentRepoResult.Empty("[Content][getContent]====No locale has content for :$param")
+        } else {
+            contentRepository.getContentFromDB(ContentRepoQuery(safeCategory, resolvedLocale, param.tag))
         }
-        // If all above won't work, fallback to eng
-        if (result is ContentRepoResult.Empty){
-            val fallbackLocale = DEFAULT_LOCALE
-            log.warn("[ContentService][getContent retry]====$param====with fallbackLocale:$fallbackLocale")
-            result = contentRepository.getContentFromDB(ContentRepoQuery(safeCategory, fallbackLocale, param.tag))
+        // a resolved locale without content means the table is behind a publish, then try every locale like before.
+        // nothing resolved is a cached answer for unknown tags and categories, those don't retry
+        if (result is ContentRepoResult.Empty && resolvedLocale != null) {
+            log.warn("[ContentService][getContent retry]====$param====resolved:$resolvedLocale")
+            localeResolver.reportStale()
+            for (locale in candidates) {
+                result = contentRepository.getContentFromDB(ContentRepoQuery(safeCategory, locale, param.tag))
+                if (result !is ContentRepoResult.Empty) {
+                    break
+                }
+            }
         }
 
+        return toQueryResult(result)
+    }
+
+    /**
+     * The DB locale [param] is served from, null if no locale has content for it
+     */
+    fun resolveLocale(param: ContentServiceQueryParam): String? {
+        val safeCategory = getSafeCategory(param.category) ?: return null
+        return localeResolver.resolve(safeCategory, param.tag, getLocaleCandidates(param.locale))
+    }
+
+    fun toQueryResult(result: ContentRepoResult): ContentServiceQueryResult {
         return when (result) {
             is ContentRepoResult.Fail -> {
                 log.warn("[Content]====getContent===${result.message}")
@@ -103,7 +146,13 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
             }
             is ContentRepoResult.Success -> {
                 log.info("[Content]====getContent===${result.version}")
-                ContentServiceQueryResult.Success(result.version, result.tag, result.data)
+                try {
+                    val payload = ContentPayload.encode(mapper, ContentResponse(result.version, result.tag, result.data.subcategories))
+                    ContentServiceQueryResult.Success(result.version, result.tag, result.data, payload)
+                } catch (e: JsonProcessingException) {
+                    log.error("[Content]====getContent===serialization failed:$e")
+                    ContentServiceQueryResult.Fail("Content is not valid")
+                }
             }
         }
     }
@@ -112,6 +161,7 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
         val publish = contentRepository.publish(publishDocId, editor, schedule)
         return when (publish) {
             is ContentRepositoryPublishResult.Success -> {
+                localeResolver.invalidate()
                 return categoryMapping.filter { it.value == publish.category }.map {
                     return@map ContentServicePublishResult.Success(it.key, publish.locale)
                 }.firstOrNull() ?: ContentServicePublishResult.Fail("Data error")
@@ -131,12 +181,15 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
         }
 
         try {
-            var bannerBytes: ByteArray? = null
-            val listItemBytes = other.bytes
-            if (banner != null && !banner.isEmpty) {
-                bannerBytes = banner.bytes
+            // the csv files are parsed straight from the upload streams
+            val parseContent = other.inputStream.use { listItemStream ->
+                val bannerStream = if (banner != null && !banner.isEmpty) banner.inputStream else null
+                try {
+                    parseContent(bannerStream, listItemStream)
+                } finally {
+                    bannerStream?.close()
+                }
             }
-            val parseContent = parseContent(bannerBytes, listItemBytes)
             val data = mapper.writeValueAsString(parseContent)
             val publishDocId = contentRepository.addContent(AddContentRequest(tag, safeCategory, safeLocale, data))
             if (publishDocId == null) {
@@ -156,6 +209,11 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
             log.error("$message====$jsonProcessingException")
             return ContentServiceUploadResult.Fail(message)
 
+        } catch (e: ContentCsvException) {
+            val message = "[Shopping][ContentCsvException]==== uploading file: ${other.originalFilename}"
+            log.error("$message====${e.errors.size} rows failed")
+            return ContentServiceUploadResult.Fail("$message<BR>Error====<BR>${e.message}")
+
         } catch (e: NumberFormatException) {
             val message = "[Shopping][NumberFormatException]==== uploading file: ${other.originalFilename}"
             log.error("$message====$e")
@@ -175,12 +233,13 @@ class ContentService @Inject constructor(private val contentRepository: ContentR
 
     companion object {
         const val DEFAULT_LOCALE = "eng"
+        private const val LOCALE_CACHE_SIZE = 1000L
     }
 
 }
 
 sealed class ContentServiceQueryResult {
-    class Success(val version: Long, val tag: String, val data: Category) : ContentServiceQueryResult()
+    class Success(val version: Long, val tag: String, val data: Category, val payload: ContentPayload) : ContentServiceQueryResult()
     class InvalidParam(val message: String) : ContentServiceQueryResult()
     class Fail(val message: String) : ContentServiceQueryResult()
 }
@@ -1,72 +1,200 @@
 package org.mozilla.msrp.platform.vertical.content.data
 
-import com.opencsv.bean.CsvToBeanBuilder
+import com.opencsv.CSVReaderBuilder
 import org.mozilla.msrp.platform.util.hash
 import java.io.ByteArrayInputStream
+import java.io.InputStream
 import java.io.InputStreamReader
 
 object CsvParserConfig {
     const val BANNER_SUBCATEGORY_NAME = "banner"
     const val BANNER_SUBCATEGORY_TYPE = "banner"
     const val BANNER_SUBCATEGORY_ID = 4
+
+    // stop collecting row errors after this many, the upload fails anyway
+    const val MAX_REPORTED_ERRORS = 20
 }
 
+/**
+ * Thrown when some rows of a content csv can't be parsed
+ *
+ * @param errors one message per failed row, with its line number
+ */
+class ContentCsvException(val errors: List<String>) : IllegalArgumentException(errors.joinToString("<BR>"))
+
 fun parseContent(bannerBytes: ByteArray?, listItemBytes: ByteArray): Category {
+    return parseContent(bannerBytes?.let { ByteArrayInputStream(it) }, ByteArrayInputStream(listItemBytes))
+}
 
-    val subCategories = mutableListOf<ContentSubcategory>()
+/**
+ * Rows are read one by one and grouped into their subcategory as they come, the streams are not closed.
+ *
+ * @throws ContentCsvException if any row fails to parse
+ */
+fun parseContent(bannerStream: InputStream?, listItemStream: InputStream): Category {
 
+    val subCategories = mutableListOf<ContentSubcategory>()
+    val errors = mutableListOf<String>()
 
     // add banner Subcategory
-    val bannerSubCategory = parseBanner(bannerBytes)
-    if (bannerSubCategory != null) {
-        bannerSubCategory.items.map {
-            it.component_id = it.destination.hash()
+    if (bannerStream != null) {
+        val bannerItems = mutableListOf<ContentItem>()
+        readContentItems(bannerStream, errors) { item ->
+            item.component_id = item.destination.hash()
+            bannerItems.add(item)
         }
-        subCategories.add(bannerSubCategory)
+        subCategories.add(ContentSubcategory(CsvParserConfig.BANNER_SUBCATEGORY_NAME, CsvParserConfig.BANNER_SUBCATEGORY_TYPE, CsvParserConfig.BANNER_SUBCATEGORY_ID, bannerItems))
     }
 
     // get other Subcategory
-    val otherSubcategory = parseOthers(listItemBytes)
-
-    subCategories.addAll(otherSubcategory)
+    subCategories.addAll(parseOthers(listItemStream, errors))
 
+    if (errors.isNotEmpty()) {
+        throw ContentCsvException(errors)
+    }
     return Category(subCategories)
 }
 
-private fun parseOthers(bytes: ByteArray): List<ContentSubcategory> {
-    val csvEntryList = CsvToBeanBuilder<ContentItem>(InputStreamReader(ByteArrayInputStream(bytes))).withType(ContentItem::class.java).build().parse()
+private fun parseOthers(stream: InputStream, errors: MutableList<String>): List<ContentSubcategory> {
+    // sub-categories in the order they first appear, items are grouped by subcategory id
+    val subCategories = linkedMapOf<Triple<String, String, Int>, ContentSubcategory>()
+    val itemsById = hashMapOf<Int, MutableList<ContentItem>>()
 
-    // collect sub-categories
-    val subCategorySet = linkedSetOf<ContentSubcategory>()
-    for (entry in csvEntryList) {
-        val componentTypeName: String = entry.component_type_name ?: break
-        val subcategoryName = entry.subcategory_name ?: break
-        val subcategoryId = entry.subcategory_id ?: break
+    readContentItems(stream, errors) { item ->
+        val componentTypeName = item.component_type_name ?: return@readContentItems
+        val subcategoryName = item.subcategory_name ?: return@readContentItems
+        val subcategoryId = item.subcategory_id ?: return@readContentItems
 
-        subCategorySet.add(ContentSubcategory(componentTypeName, subcategoryName, subcategoryId, listOf()))
+        val items = itemsById.getOrPut(subcategoryId) { mutableListOf() }
+        subCategories.getOrPut(Triple(componentTypeName, subcategoryName, subcategoryId)) {
+            ContentSubcategory(componentTypeName, subcategoryName, subcategoryId, items)
+        }
+        item.component_id = item.destination.hash()
+        items.add(item)
     }
+    return subCategories.values.toList()
+}
 
-    // for each sub-categories
-    for (subcategory in subCategorySet) {
-        val otherItems = mutableListOf<ContentItem>()
+private fun readContentItems(stream: InputStream, errors: MutableList<String>, onItem: (ContentItem) -> Unit) {
+    val reader = CSVReaderBuilder(InputStreamReader(stream, Charsets.UTF_8)).build()
+    val header = reader.readNext() ?: return
+    val columns = ContentColumns(header)
 
-        for (content in csvEntryList) {
-            if (content.subcategory_id == subcategory.subcategoryId) {
-                content.component_id = content.destination.hash()
-                otherItems.add(content)
+    var row = reader.readNext()
+    while (row != null) {
+        try {
+            onItem(columns.toContentItem(row))
+        } catch (e: IllegalArgumentException) {
+            if (errors.size < CsvParserConfig.MAX_REPORTED_ERRORS) {
+                errors.add("line ${reader.linesRead}: ${e.message}")
             }
         }
-        subcategory.items = otherItems
+        row = reader.readNext()
     }
-    return subCategorySet.toList()
 }
 
-private fun parseBanner(bytes: ByteArray?): ContentSubcategory? {
-    if (bytes == null) return null
-    val bannerItems = mutableListOf<ContentItem>()
-    val csvEntryList = CsvToBeanBuilder<ContentItem>(InputStreamReader(ByteArrayInputStream(bytes))).withType(ContentItem::class.java).build().parse()
-    for (content in csvEntryList) {
-        bannerItems.add(content)
+/**
+ * Column indexes of the [ContentItem] fields, resolved once from the header.
+ * Column names are matched case-insensitively, unknown columns are ignored and blank cells keep
+ * the default value.
+ */
+private class ContentColumns(header: Array<String>) {
+
+    private val indexes = sortedMapOf<String, Int>(String.CASE_INSENSITIVE_ORDER).apply {
+        header.forEachIndexed { index, name -> putIfAbsent(name.removePrefix("\uFEFF").trim(), index) }
+    }
+
+    private val createdAt = indexOf("created_at")
+    private val country = indexOf("country")
+    private val sourceName = indexOf("source_name")
+    private val sourceType = indexOf("source_type")
+    private val partner = indexOf("partner")
+    private val verticalName = indexOf("vertical_name")
+    private val verticalId = indexOf("vertical_id")
+    private val categoryName = indexOf("category_name")
+    private val categoryId = indexOf("category_id")
+    private val subcategoryName = indexOf("subcategory_name")
+    private val subcategoryId = indexOf("subcategory_id")
+    private val componentTypeName = indexOf("component_type_name")
+    private val componentTypeId = indexOf("component_type_id")
+    private val imageType = indexOf("image_type")
+    private val image = indexOf("image")
+    private val destination = indexOf("destination")
+    private val title = indexOf("title")
+    private val description = indexOf("description")
+    private val score = indexOf("score")
+    private val scoreReviews = indexOf("score_reviews")
+    private val price = indexOf("price")
+    private val discount = indexOf("discount")
+    private val fresh = indexOf("fresh")
+    private val startDate = indexOf("start_date")
+    private val endDate = indexOf("end_date")
+    private val additional = indexOf("additional")
+
+    private fun indexOf(name: String) = indexes[name] ?: -1
+
+    fun toContentItem(row: Array<String>): ContentItem {
+        val item = ContentItem()
+        row.cell(createdAt)?.let { item.created_at = it.toLongCell("created_at") }
+        row.cell(country)?.let { item.country = it }
+        row.cell(sourceName)?.let { item.source_name = it }
+        row.cell(sourceType)?.let { item.source_type = it }
+        row.cell(partner)?.let { item.partner = it.toBooleanCell("partner") }
+        row.cell(verticalName)?.let { item.vertical_name = it }
+        row.cell(verticalId)?.let { item.vertical_id = it.toIntCell("vertical_id") }
+        row.cell(categoryName)?.let { item.category_name = it }
+        row.cell(categoryId)?.let { item.category_id = it.toIntCell("category_id") }
+        row.cell(subcategoryName)?.let { item.subcategory_name = it }
+        row.cell(subcategoryId)?.let { item.subcategory_id = it.toIntCell("subcategory_id") }
+        row.cell(componentTypeName)?.let { item.component_type_name = it }
+        row.cell(componentTypeId)?.let { item.component_type_id = it.toIntCell("component_type_id") }
+        row.cell(imageType)?.let { item.image_type = it }
+        row.cell(image)?.let { item.image = it }
+        row.cell(destination)?.let { item.destination = it }
+        row.cell(title)?.let { item.title = it }
+        row.cell(description)?.let { item.description = it }
+        row.cell(score)?.let { item.score = it.toDoubleCell("score") }
+        row.cell(scoreReviews)?.let { item.score_reviews = it }
+        row.cell(price)?.let { item.price = it }
+        row.cell(discount)?.let { item.discount = it }
+        row.cell(fresh)?.let { item.fresh = it.toBooleanCell("fresh") }
+        row.cell(startDate)?.let { item.start_date = it.toLongCell("start_date") }
+        row.cell(endDate)?.let { item.end_date = it.toLongCell("end_date") }
+        row.cell(additional)?.let { item.additional = it }
+        return item
+    }
+
+    private fun Array<String>.cell(index: Int): String? {
+        if (index < 0 || index >= size || this[index].isBlank()) {
+            return null
+        }
+        return this[index]
+    }
+
+    private fun String.toLongCell(column: String): Long {
+        return trim().toLongOrNull() ?: throw IllegalArgumentException("$column is not a number: $this")
+    }
+
+    private fun String.toIntCell(column: String): Int {
+        return trim().toIntOrNull() ?: throw IllegalArgumentException("$column is not a number: $this")
+    }
+
+    private fun String.toDoubleCell(column: String): Double {
+        return trim().toDoubleOrNull() ?: throw IllegalArgumentException("$column is not a number: $this")
+    }
+
+    // the same values commons-beanutils accepted when the items were bound by opencsv
+    private fun String.toBooleanCell(column: String): Boolean {
+        val value = trim()
+        return when {
+            TRUE_VALUES.any { it.equals(value, ignoreCase = true) } -> true
+            FALSE_VALUES.any { it.equals(value, ignoreCase = true) } -> false
+            else -> throw IllegalArgumentException("$column is not a boolean: $this")
+        }
+    }
+
+    companion object {
+        private val TRUE_VALUES = listOf("true", "yes", "y", "on", "1")
+        private val FALSE_VALUES = listOf("false", "no", "n", "off", "0")
     }
-    return ContentSubcategory(CsvParserConfig.BANNER_SUBCATEGORY_NAME, CsvParserConfig.BANNER_SUBCATEGORY_TYPE, CsvParserConfig.BANNER_SUBCATEGORY_ID, bannerItems)
 }
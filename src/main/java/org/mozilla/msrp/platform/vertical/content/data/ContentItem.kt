@@ -1,35 +1,33 @@
 package org.mozilla.msrp.platform.vertical.content.data
 
-import com.opencsv.bean.CsvBindByName
-
 // TODO: set the required fields for each categories
 //  https://docs.google.com/spreadsheets/d/1s--x8TiIsEEISHl3YJA8ulAljxJt4FQUHZ0r5tCxHy0/edit#gid=1268475188
 class ContentItem(
-        @field:CsvBindByName(required = false) var created_at: Long? = 0L,
-        @field:CsvBindByName(required = false) var country: String? = "",
-        @field:CsvBindByName(required = false) var source_name: String? = "",
-        @field:CsvBindByName(required = false) var source_type: String? = "",
-        @field:CsvBindByName(required = false) var partner: Boolean? = false,
-        @field:CsvBindByName(required = false) var vertical_name: String? = "",
-        @field:CsvBindByName(required = false) var vertical_id: Int? = 0,
-        @field:CsvBindByName(required = false) var category_name: String? = "",
-        @field:CsvBindByName(required = false) var category_id: Int? = 0,
-        @field:CsvBindByName(required = false) var subcategory_name: String? = "",
-        @field:CsvBindByName(required = false) var subcategory_id: Int? = 0,
-        @field:CsvBindByName(required = false) var component_type_name: String? = "",
-        @field:CsvBindByName(required = false) var component_type_id: Int? = 0,
-        @field:CsvBindByName(required = false) var image_type: String? = "",
-        @field:CsvBindByName(required = false) var image: String? = "",
-        @field:CsvBindByName(required = false) var destination: String = "",
-        @field:CsvBindByName(required = false) var title: String? = "",
-        @field:CsvBindByName(required = false) var description: String? = "",
-        @field:CsvBindByName(required = false) var score: Double? = 0.0,
-        @field:CsvBindByName(required = false) var score_reviews: String? = "",
-        @field:CsvBindByName(required = false) var price: String? = "",
-        @field:CsvBindByName(required = false) var discount: String? = "",
-        @field:CsvBindByName(required = false) var fresh: Boolean? = false,
-        @field:CsvBindByName(required = false) var start_date: Long? = 0L,
-        @field:CsvBindByName(required = false) var end_date: Long? = 0L,
-        @field:CsvBindByName(required = false) var additional: String = "",
+        var created_at: Long? = 0L,
+        var country: String? = "",
+        var source_name: String? = "",
+        var source_type: String? = "",
+        var partner: Boolean? = false,
+        var vertical_name: String? = "",
+        var vertical_id: Int? = 0,
+        var category_name: String? = "",
+        var category_id: Int? = 0,
+        var subcategory_name: String? = "",
+        var subcategory_id: Int? = 0,
+        var component_type_name: String? = "",
+        var component_type_id: Int? = 0,
+        var image_type: String? = "",
+        var image: String? = "",
+        var destination: String = "",
+        var title: String? = "",
+        var description: String? = "",
+        var score: Double? = 0.0,
+        var score_reviews: String? = "",
+        var price: String? = "",
+        var discount: String? = "",
+        var fresh: Boolean? = false,
+        var start_date: Long? = 0L,
+        var end_date: Long? = 0L,
+        var additional: String = "",
         var component_id: String = ""
 )
\ No newline at end of file
@@ -2,12 +2,11 @@ package org.mozilla.msrp.platform.vertical.news
 
 
 import okhttp3.OkHttpClient
-import okhttp3.logging.HttpLoggingInterceptor
+import org.mozilla.msrp.platform.common.property.NewsProperties
 import org.mozilla.msrp.platform.user.RssApiInfo
 import org.springframework.context.annotation.Bean
 import retrofit2.Call
 import retrofit2.Retrofit
-import retrofit2.converter.simplexml.SimpleXmlConverterFactory
 import retrofit2.http.GET
 import retrofit2.http.Path
 import javax.inject.Inject
@@ -26,16 +25,18 @@ class DetikRssFeedClientConfig {
     @Inject
     lateinit var rssApiInfo: RssApiInfo
 
+    @Inject
+    lateinit var okHttpClient: OkHttpClient
+
+    @Inject
+    lateinit var newsProperties: NewsProperties
+
     @Bean
     fun DetikRssFeedClientFactory(): DetikRssFeedClient {
-        val interceptor = HttpLoggingInterceptor()
-        interceptor.level = HttpLoggingInterceptor.Level.BODY
-        val client = OkHttpClient.Builder().addInterceptor(interceptor).build()
-
         return Retrofit.Builder()
             .baseUrl(rssApiInfo.detik)
-            .client(client)
-            .addConverterFactory(SimpleXmlConverterFactory.create())
+            .client(okHttpClient)
+            .addConverterFactory(RssConverterFactory(newsProperties.maxFeedItems))
             .build()
             .create(DetikRssFeedClient::class.java)
     }
@@ -1,6 +1,7 @@
 package org.mozilla.msrp.platform.vertical.news
 
 import org.mozilla.msrp.platform.util.logger
+import retrofit2.Call
 import javax.inject.Inject
 import javax.inject.Named
 
@@ -10,9 +11,14 @@ class DetikRssFeedRepository @Inject constructor(private val detikRssFeedClient:
 
     val log = logger()
 
-    fun news(topic: String): List<FeedItem>? {
+    /**
+     * The call is returned unexecuted, so the caller can cancel it
+     */
+    fun newsCall(topic: String): Call<DetikRss> = detikRssFeedClient.rss(topic)
 
-        val rss = detikRssFeedClient.rss(topic).execute().body()
+    fun news(call: Call<DetikRss>): List<FeedItem>? {
+
+        val rss = call.execute().body()
         log.info("[NEWS]====loading indonesia news Liputan6 [${rss?.feedItems?.size}]")
         return rss?.feedItems
     }
@@ -1,6 +1,7 @@
 package org.mozilla.msrp.platform.vertical.news
 
 import org.mozilla.msrp.platform.util.logger
+import retrofit2.Call
 import javax.inject.Inject
 import javax.inject.Named
 
@@ -9,9 +10,14 @@ class Liputan6RssFeedRepository @Inject constructor(private val liputan6RssFeedC
 
     val log = logger()
 
-    fun news(topic: String): List<FeedItem>? {
+    /**
+     * The call is returned unexecuted, so the caller can cancel it
+     */
+    fun newsCall(topic: String): Call<Liputan6Rss> = liputan6RssFeedClient.rss(topic)
 
-        val rss = liputan6RssFeedClient.rss(topic).execute().body()
+    fun news(call: Call<Liputan6Rss>): List<FeedItem>? {
+
+        val rss = call.execute().body()
         log.info("[NEWS]====loading indonesia news Liputan6 [${rss?.feedItems?.size}]")
         return rss?.feedItems
     }
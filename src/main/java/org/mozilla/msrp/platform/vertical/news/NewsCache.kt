@@ -0,0 +1,116 @@
+package org.mozilla.msrp.platform.vertical.news
+
+import com.google.common.base.Ticker
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheLoader
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.ListenableFutureTask
+import org.mozilla.msrp.platform.util.logger
+import java.time.Clock
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * News lists by key, always served from memory.
+ *
+ * Once an entry is older than [ttlMinutes] the next request still gets it, and a reload runs
+ * in the background. A reload that fails or comes back empty keeps the last good list.
+ * Only the first load of a key runs on the request thread.
+ *
+ * Reloads run on [reloadExecutor], which is owned and shut down by the caller.
+ */
+class NewsCache<K : Any>(
+        private val name: String,
+        maximumSize: Long,
+        private val ttlMinutes: Long,
+        private val clock: Clock,
+        private val reloadExecutor: Executor,
+        private val loader: (K) -> List<FeedItem>
+) {
+
+    private val log = logger()
+
+    private val reloads = AtomicLong()
+    private val failedReloads = AtomicLong()
+    private val staleHits = AtomicLong()
+    private val maxStalenessMillis = AtomicLong()
+
+    private val cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .refreshAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+            .ticker(object : Ticker() {
+                override fun read() = TimeUnit.MILLISECONDS.toNanos(clock.millis())
+            })
+            .recordStats()
+            .build(object : CacheLoader<K, NewsEntry>() {
+                override fun load(key: K): NewsEntry {
+                    return NewsEntry(loader(key), clock.millis())
+                }
+
+                override fun reload(key: K, oldValue: NewsEntry): ListenableFuture<NewsEntry> {
+                    val task = ListenableFutureTask.create<NewsEntry> { reloadEntry(key, oldValue) }
+                    reloadExecutor.execute(task)
+                    return task
+                }
+            })
+
+    fun get(key: K): List<FeedItem> {
+        val entry = cache.get(key)
+        val staleness = clock.millis() - entry.loadedAt - TimeUnit.MINUTES.toMillis(ttlMinutes)
+        if (staleness > 0) {
+            staleHits.incrementAndGet()
+            maxStalenessMillis.accumulateAndGet(staleness) { current, new -> maxOf(current, new) }
+        }
+        return entry.items
+    }
+
+    /**
+     * Reload [key] in the background, or load it on the calling thread if it's not cached
+     */
+    fun refresh(key: K) = cache.refresh(key)
+
+    fun stats(): NewsCacheStats {
+        val stats = cache.stats()
+        return NewsCacheStats(
+                stats.hitCount(),
+                stats.missCount(),
+                reloads.get(),
+                failedReloads.get(),
+                staleHits.get(),
+                maxStalenessMillis.get())
+    }
+
+    private fun reloadEntry(key: K, oldValue: NewsEntry): NewsEntry {
+        reloads.incrementAndGet()
+        val started = clock.millis()
+        val items = try {
+            loader(key)
+        } catch (e: Exception) {
+            log.warn("[NEWS]====$name reload failed for [$key]: $e")
+            emptyList<FeedItem>()
+        }
+        if (items.isEmpty() && oldValue.items.isNotEmpty()) {
+            failedReloads.incrementAndGet()
+            log.warn("[NEWS]====$name keeps ${oldValue.items.size} items for [$key], ${stats()}")
+            return oldValue
+        }
+        log.info("[NEWS]====$name reloaded [$key] in ${clock.millis() - started}ms, ${stats()}")
+        return NewsEntry(items, clock.millis())
+    }
+
+    private class NewsEntry(val items: List<FeedItem>, val loadedAt: Long)
+}
+
+/**
+ * @param staleHits requests served an entry older than the ttl, while its reload was pending
+ * @param maxStalenessMillis how far past the ttl the stalest served entry was
+ */
+data class NewsCacheStats(
+        val hits: Long,
+        val misses: Long,
+        val reloads: Long,
+        val failedReloads: Long,
+        val staleHits: Long,
+        val maxStalenessMillis: Long
+)
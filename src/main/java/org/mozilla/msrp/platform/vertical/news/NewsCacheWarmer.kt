@@ -0,0 +1,153 @@
+package org.mozilla.msrp.platform.vertical.news
+
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.Firestore
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.common.property.NewsProperties
+import org.mozilla.msrp.platform.firestore.getUnchecked
+import org.mozilla.msrp.platform.util.logger
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import javax.annotation.PreDestroy
+import javax.inject.Inject
+import javax.inject.Named
+import kotlin.math.pow
+
+/**
+ * Keeps the most requested news keys warm.
+ *
+ * Requests that served news are counted per key. The counts are merged every cache ttl into a
+ * decaying score shared by all instances in Firestore. The top keys are reloaded in the background.
+ * A new instance loads those keys as soon as its cache is registered, before the first users ask.
+ */
+@Named
+class NewsCacheWarmer @Inject constructor(
+        private val firestore: Firestore,
+        private val newsProperties: NewsProperties
+) {
+
+    private val log = logger()
+
+    private val caches = ConcurrentHashMap<String, NewsCache<String>>()
+    private val requestCounts = ConcurrentHashMap<String, ConcurrentHashMap<String, AtomicLong>>()
+
+    private val executor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setNameFormat("news-warm-up-%d").setDaemon(true).build()
+    )
+
+    init {
+        executor.scheduleWithFixedDelay({ keepWarm() }, newsProperties.cacheTtl, newsProperties.cacheTtl, TimeUnit.MINUTES)
+    }
+
+    /**
+     * Start warming [cache], its popular keys are loaded in the background right away
+     */
+    fun register(name: String, cache: NewsCache<String>) {
+        caches[name] = cache
+        executor.execute {
+            val keys = loadScores(name).keys
+            log.info("[NEWS]====warming up $name with ${keys.size} keys")
+            keys.forEach { warm(cache, it) }
+        }
+    }
+
+    /**
+     * Count a request of [key] that served news. Keys come from the client, so new keys are
+     * dropped once [MAX_COUNTED_KEYS] are waiting for the next update.
+     */
+    fun record(name: String, key: String) = addCount(name, key, 1)
+
+    private fun addCount(name: String, key: String, count: Long) {
+        val counts = requestCounts.getOrPut(name) { ConcurrentHashMap() }
+        if (counts.size >= MAX_COUNTED_KEYS && !counts.containsKey(key)) {
+            return
+        }
+        counts.getOrPut(key) { AtomicLong() }.addAndGet(count)
+    }
+
+    private fun keepWarm() {
+        caches.forEach { (name, cache) ->
+            try {
+                val scores = updateScores(name)
+                scores.keys.forEach { cache.refresh(it) }
+                log.info("[NEWS]====kept ${scores.size} keys of $name warm, ${cache.stats()}")
+            } catch (e: Exception) {
+                log.error("[NEWS]====warm up of $name failed", e)
+            }
+        }
+    }
+
+    private fun warm(cache: NewsCache<String>, key: String) {
+        try {
+            cache.get(key)
+        } catch (e: Exception) {
+            log.warn("[NEWS]====warm up failed for [$key]: $e")
+        }
+    }
+
+    /**
+     * Decay the shared scores, add this instance's requests since the last update and keep the top keys.
+     *
+     * Instances update the same doc, so it's read and written in a transaction. The decay depends
+     * on the time since the last update by any instance, so it doesn't compound once per instance.
+     */
+    private fun updateScores(name: String): Map<String, Double> {
+        val counts = requestCounts.remove(name)?.mapValues { (_, count) -> count.get() } ?: emptyMap()
+        val scoresRef = firestore.collection(COLLECTION_NEWS_POPULAR_KEYS).document(name)
+        val ttlMillis = TimeUnit.MINUTES.toMillis(newsProperties.cacheTtl)
+        try {
+            return firestore.runTransaction { transaction ->
+                val snapshot = transaction.get(scoresRef).get()
+                val now = System.currentTimeMillis()
+                val updatedAt = snapshot.getLong(FIELD_UPDATED_AT) ?: now - ttlMillis
+                val decay = SCORE_DECAY.pow((now - updatedAt).coerceAtLeast(0).toDouble() / ttlMillis)
+
+                val scores = HashMap<String, Double>()
+                toScores(snapshot).forEach { (key, score) -> scores[key] = score * decay }
+                counts.forEach { (key, count) -> scores[key] = (scores[key] ?: 0.0) + count }
+
+                val top = scores.entries
+                        .filter { it.value >= MIN_SCORE }
+                        .sortedByDescending { it.value }
+                        .take(MAX_WARM_KEYS)
+                        .associate { it.key to it.value }
+                transaction.set(scoresRef, mapOf(FIELD_SCORES to top, FIELD_UPDATED_AT to now))
+                top
+            }.getUnchecked()
+        } catch (e: Exception) {
+            // keep the counts for the next update
+            counts.forEach { (key, count) -> addCount(name, key, count) }
+            throw e
+        }
+    }
+
+    private fun loadScores(name: String): Map<String, Double> {
+        return toScores(firestore.collection(COLLECTION_NEWS_POPULAR_KEYS).document(name).getUnchecked())
+    }
+
+    private fun toScores(snapshot: DocumentSnapshot): Map<String, Double> {
+        val scores = snapshot.get(FIELD_SCORES) as? Map<*, *> ?: return emptyMap()
+        return scores.entries
+                .mapNotNull { (key, score) -> if (key is String && score is Number) key to score.toDouble() else null }
+                .toMap()
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdownNow()
+    }
+
+    companion object {
+        private const val COLLECTION_NEWS_POPULAR_KEYS = "news_popular_keys"
+        private const val FIELD_SCORES = "scores"
+        private const val FIELD_UPDATED_AT = "updatedAt"
+
+        private const val MAX_WARM_KEYS = 50
+        // per cache ttl since the last update
+        private const val SCORE_DECAY = 0.5
+        private const val MIN_SCORE = 1.0
+        private const val MAX_COUNTED_KEYS = 1000
+    }
+}
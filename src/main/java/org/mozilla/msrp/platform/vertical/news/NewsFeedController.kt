@@ -1,7 +1,6 @@
 package org.mozilla.msrp.platform.vertical.news
 
-import com.google.common.cache.CacheBuilder
-import com.google.common.cache.CacheLoader
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import org.mozilla.msrp.platform.common.property.NewsProperties
 import org.mozilla.msrp.platform.util.logger
 import org.springframework.http.HttpStatus
@@ -10,7 +9,10 @@ import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.PathVariable
 import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
-import java.util.concurrent.TimeUnit
+import java.time.Clock
+import java.util.concurrent.Executors
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
 import javax.inject.Inject
 
 
@@ -18,10 +20,31 @@ import javax.inject.Inject
 class NewsFeedController @Inject constructor(
         private val googleNewsFeedService: GoogleNewsFeedService,
         private val indonesiaNewsFeedService: IndonesiaNewsFeedService,
-        private val newsProperties: NewsProperties) {
+        private val newsProperties: NewsProperties,
+        private val clock: Clock) {
 
     private val log = logger()
 
+    // shared by the reloads of both caches
+    private val reloadExecutor = Executors.newFixedThreadPool(
+            RELOAD_THREADS,
+            ThreadFactoryBuilder().setNameFormat("news-reload-%d").setDaemon(true).build()
+    )
+
+    @Inject
+    lateinit var newsCacheWarmer: NewsCacheWarmer
+
+    @PostConstruct
+    fun warmUp() {
+        newsCacheWarmer.register(CACHE_GOOGLE, cacheGoogleNews)
+        newsCacheWarmer.register(CACHE_INDONESIA, cacheIndonesiaNews)
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        reloadExecutor.shutdownNow()
+    }
+
     @GetMapping("/api/v1/news/google")
     internal fun googleNews(
             @RequestParam(value = "language") language: String,
@@ -48,10 +71,11 @@ class NewsFeedController @Inject constructor(
         val cache = cacheGoogleNews.get(key)
         log.info("[NEWS]====cache Google news key[${key}]")
 
-        if (cache == null || cache.isEmpty()) {
+        if (cache.isEmpty()) {
 
             return ResponseEntity(listOf(), HttpStatus.NO_CONTENT)
         }
+        newsCacheWarmer.record(CACHE_GOOGLE, key)
         log.info("[NEWS]====cache Google news [${cache.size}]")
 
         return ResponseEntity(cache, HttpStatus.OK)
@@ -61,37 +85,22 @@ class NewsFeedController @Inject constructor(
     fun googleNewsTopic() = listOf(TOPIC_GOOGLE_TOP_NEWS, "WORLD", "NATION", "BUSINESS", "TECHNOLOGY", "ENTERTAINMENT", "SPORTS", "SCIENCE", "HEALTH")
 
 
-    private val cacheGoogleNews = CacheBuilder.newBuilder()
-            .maximumSize(newsProperties.cacheSize)
-            .refreshAfterWrite(newsProperties.cacheTtl, TimeUnit.MINUTES)
-            .recordStats()
-            .build(
-                    object : CacheLoader<String, List<FeedItem>>() {
-                        override fun load(key: String): List<FeedItem> {
-
-                            val split = key.split(delimiters)
-                            if (split.size != 4) {
-                                return listOf()
-                            }
-                            val topic = split[0]
-                            if (topic == TOPIC_GOOGLE_TOP_NEWS) {
-                                return googleNewsFeedService.getTopNews(split[1], split[2], split[3]) ?: listOf()
-                            }
-                            return googleNewsFeedService.getNews(topic, split[1], split[2], split[3]) ?: listOf()
-                        }
-                    })
-
-
-    private val cacheIndonesiaNews = CacheBuilder.newBuilder()
-            .maximumSize(newsProperties.cacheSize)
-            .refreshAfterWrite(newsProperties.cacheTtl, TimeUnit.MINUTES)
-            .recordStats()
-            .build(
-                    object : CacheLoader<String, List<FeedItem>>() {
-                        override fun load(topic: String): List<FeedItem> {
-                            return indonesiaNewsFeedService.getNews(topic, detikTopic[topic]) ?: listOf()
-                        }
-                    })
+    private val cacheGoogleNews = NewsCache<String>(CACHE_GOOGLE, newsProperties.cacheSize, newsProperties.cacheTtl, clock, reloadExecutor) { key ->
+        val split = key.split(delimiters)
+        if (split.size != 4) {
+            return@NewsCache listOf()
+        }
+        val topic = split[0]
+        if (topic == TOPIC_GOOGLE_TOP_NEWS) {
+            return@NewsCache googleNewsFeedService.getTopNews(split[1], split[2], split[3]) ?: listOf()
+        }
+        googleNewsFeedService.getNews(topic, split[1], split[2], split[3]) ?: listOf()
+    }
+
+
+    private val cacheIndonesiaNews = NewsCache<String>(CACHE_INDONESIA, newsProperties.cacheSize, newsProperties.cacheTtl, clock, reloadExecutor) { topic ->
+        indonesiaNewsFeedService.getNews(topic, detikTopic[topic]) ?: listOf()
+    }
 
     @GetMapping("/api/v1/news/indonesia/topic/{topic}")
     internal fun indonesiaNewsByTopic(
@@ -107,6 +116,7 @@ class NewsFeedController @Inject constructor(
             log.info("[NEWS]====No news for topic $String")
             return ResponseEntity("No news for topic", HttpStatus.NO_CONTENT)
         }
+        newsCacheWarmer.record(CACHE_INDONESIA, liputan6Topic)
         log.info("[NEWS]====found [${newsItems.size}] news item for topic $topic")
         return ResponseEntity(newsItems, HttpStatus.OK)
     }
@@ -139,5 +149,8 @@ class NewsFeedController @Inject constructor(
 
         private const val delimiters = "=="
         private const val TOPIC_GOOGLE_TOP_NEWS = "Top-news"
+        private const val CACHE_GOOGLE = "google"
+        private const val CACHE_INDONESIA = "indonesia"
+        private const val RELOAD_THREADS = 4
     }
 }
\ No newline at end of file
@@ -1,56 +1,50 @@
 package org.mozilla.msrp.platform.vertical.news
 
-import org.simpleframework.xml.Attribute
-import org.simpleframework.xml.Element
-import org.simpleframework.xml.ElementList
-import org.simpleframework.xml.Path
-import org.simpleframework.xml.Root
-import org.simpleframework.xml.Text
-import java.text.ParseException
-import java.text.SimpleDateFormat
+import com.fasterxml.jackson.annotation.JsonIgnore
+import java.time.ZonedDateTime
+import java.time.format.DateTimeFormatter
+import java.time.format.DateTimeParseException
 
 
 open class Rss<T> {
     open var feedItems: List<T>? = null
 }
 
-@Root(strict = false)
 class DetikRss : Rss<DetikFeedItem>() {
-    @field:Attribute
-    var version: String? = null
-
-    @field:Path("channel")
-    @field:ElementList(name = "item", entry = "item", type = DetikFeedItem::class, required = true, inline = true)
     override var feedItems: List<DetikFeedItem>? = null
 }
 
-@Root(strict = false)
 class Liputan6Rss : Rss<LiputanFeedItem>() {
-    @field:Attribute
-    var version: String? = null
-
-    @field:Path("channel")
-    @field:ElementList(name = "item", entry = "item", type = LiputanFeedItem::class, required = true, inline = true)
     override var feedItems: List<LiputanFeedItem>? = null
 }
 
-@Root(strict = false)
 class GoogleRss : Rss<GoogleFeedItem>() {
-    @field:Attribute
-    var version: String? = null
-
-    @field:Path("channel")
-    @field:ElementList(name = "item", entry = "item", type = GoogleFeedItem::class, required = true, inline = true)
     override var feedItems: List<GoogleFeedItem>? = null
 }
 
-open class FeedItem : Comparable<FeedItem> {
+open class FeedItem(pubDate: String? = "") : Comparable<FeedItem> {
 
     companion object {
-        private val sharedRssDateFormat = SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz")
+        // items without a readable date sort last
+        private const val UNKNOWN_DATE = Long.MIN_VALUE
+
+        fun parsePubDate(pubDate: String?): Long {
+            if (pubDate.isNullOrBlank()) {
+                return UNKNOWN_DATE
+            }
+            return try {
+                ZonedDateTime.parse(pubDate.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+            } catch (e: DateTimeParseException) {
+                UNKNOWN_DATE
+            }
+        }
     }
 
-    open var pubDate: String? = ""
+    var pubDate: String? = pubDate
+        set(value) {
+            field = value
+            pubDateEpochMillis = parsePubDate(value)
+        }
 
     open var title: String? = ""
 
@@ -62,94 +56,47 @@ open class FeedItem : Comparable<FeedItem> {
 
     open var source: String = ""
 
+    /**
+     * [pubDate] in epoch millis, parsed whenever [pubDate] is set, so sorting only compares longs.
+     */
+    @get:JsonIgnore
+    var pubDateEpochMillis: Long = parsePubDate(pubDate)
+        private set
+
+    // newest first
     override fun compareTo(other: FeedItem): Int {
-        return try {
-            val formatter = sharedRssDateFormat
-            val o1Date = formatter.parse(this.pubDate)
-            val o2Date = formatter.parse(other.pubDate)
-            if (o1Date.before(o2Date)) {
-                1
-            } else {
-                -1
-            }
-        } catch (e: ParseException) {
-            1
-        }
+        return other.pubDateEpochMillis.compareTo(pubDateEpochMillis)
     }
 }
 
-@Root(name = "item", strict = false)
 class LiputanFeedItem @JvmOverloads constructor(
-
-        @field:Element
-        override var pubDate: String? = "",
-
-        @field:Path("title")
-        @field:Text(data = true)
+        pubDate: String? = "",
         override var title: String? = "",
-
-        @field:Element
         override var link: String? = "",
-
-        @field:Path("description")
-        @field:Text(data = true)
         override var description: String? = "",
-
-        @field:Path("media:thumbnail")
-        @field:Attribute(name = "url", required = false)
         override var image: String? = "",
 
         override var source: String = "liputan6"
-) : FeedItem()
+) : FeedItem(pubDate)
 
 
-@Root(name = "item", strict = false)
 class GoogleFeedItem @JvmOverloads constructor(
-
-        @field:Element
-        override var pubDate: String? = "",
-
-        @field:Path("title")
-        @field:Text(data = true)
+        pubDate: String? = "",
         override var title: String? = "",
-
-        @field:Element
         override var link: String? = "",
-
-        @field:Path("description")
-        @field:Text(data = true)
         override var description: String? = "",
-
-        @field:Path("media:content")
-        @field:Attribute(name = "url", required = false)
         override var image: String? = null,
-
-        @field:Element(name = "source")
         override var source: String = ""
-) : FeedItem()
+) : FeedItem(pubDate)
 
 
-@Root(name = "item", strict = false)
 class DetikFeedItem @JvmOverloads constructor(
-
-        @field:Element
-        override var pubDate: String? = "",
-
-        @field:Path("title")
-        @field:Text(data = true)
+        pubDate: String? = "",
         override var title: String? = "",
-
-        @field:Element
         override var link: String? = "",
-
-        @field:Path("description")
-        @field:Text(data = true)
         override var description: String? = "",
-
-        @field:Path("enclosure")
-        @field:Attribute(name = "url", required = false)
         override var image: String? = "",
 
         override var source: String = "Detik"
-) : FeedItem()
+) : FeedItem(pubDate)
 
@@ -1,5 +1,16 @@
 package org.mozilla.msrp.platform.vertical.news
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.mozilla.msrp.platform.util.logger
+import retrofit2.Call
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import javax.annotation.PreDestroy
 import javax.inject.Inject
 import javax.inject.Named
 
@@ -26,19 +37,90 @@ class IndonesiaNewsFeedService @Inject constructor(
         private val liputan6RssFeedRepository: Liputan6RssFeedRepository,
         private val detikRssFeedRepository: DetikRssFeedRepository) {
 
+    private val log = logger()
+
+    // own pool, so slow feeds can't hold threads other requests fan out on
+    private val executor = ThreadPoolExecutor(
+            SOURCE_THREADS,
+            SOURCE_THREADS,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            ArrayBlockingQueue<Runnable>(SOURCE_QUEUE_SIZE),
+            ThreadFactoryBuilder().setNameFormat("news-source-%d").setDaemon(true).build(),
+            ThreadPoolExecutor.AbortPolicy()
+    ).apply {
+        allowCoreThreadTimeOut(true)
+    }
+
+    /**
+     * All sources of the topic are fetched at the same time. A source that fails or doesn't answer
+     * within [SOURCE_TIMEOUT_SECONDS] is left out, the others are still merged.
+     *
+     * A source still running at the deadline has its http call cancelled, interrupting the thread
+     * alone doesn't stop a blocking socket read. When the pool is full, sources are left out
+     * rather than run on the calling thread.
+     */
     fun getNews(liputanTopicId: String, detikTopicId: String?): List<FeedItem>? {
-        val liputan6List = liputan6RssFeedRepository.news(liputanTopicId)?: emptyList()
+        val sources = mutableListOf<NewsSource>()
+        val liputanCall = liputan6RssFeedRepository.newsCall(liputanTopicId)
+        sources.add(NewsSource("liputan6", liputanCall) { liputan6RssFeedRepository.news(liputanCall) })
+        if (detikTopicId != null) {
+            val detikCall = detikRssFeedRepository.newsCall(detikTopicId)
+            sources.add(NewsSource("detik", detikCall) { detikRssFeedRepository.news(detikCall) })
+        }
 
-        val detikList = detikTopicId?.let {
-            detikRssFeedRepository.news(it)
-        }?: emptyList()
+        val futures = sources.map { source ->
+            try {
+                executor.submit<List<FeedItem>?> { source.fetch() }
+            } catch (e: RejectedExecutionException) {
+                null
+            }
+        }
 
-        val allNewsList = liputan6List.toMutableList().apply {
-            addAll(detikList)
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SOURCE_TIMEOUT_SECONDS)
+        val allNewsList = mutableListOf<FeedItem>()
+        futures.forEachIndexed { index, future ->
+            val source = sources[index]
+            val items = if (future == null) {
+                log.warn("[NEWS]====source ${source.name} rejected for topic $liputanTopicId, too many pending fetches")
+                null
+            } else {
+                await(source, future, deadline, liputanTopicId)
+            }
+            if (items == null) {
+                log.warn("[NEWS]====source ${source.name} has no news for topic $liputanTopicId")
+            } else {
+                allNewsList.addAll(items)
+            }
         }
         return allNewsList.sorted()
     }
-}
 
+    private fun await(source: NewsSource, future: Future<List<FeedItem>?>, deadline: Long, topic: String): List<FeedItem>? {
+        return try {
+            future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+        } catch (e: TimeoutException) {
+            log.warn("[NEWS]====source ${source.name} timed out for topic $topic")
+            source.call.cancel()
+            future.cancel(true)
+            null
+        } catch (e: ExecutionException) {
+            log.warn("[NEWS]====source ${source.name} failed for topic $topic: ${e.cause ?: e}")
+            null
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdownNow()
+    }
 
+    private class NewsSource(val name: String, val call: Call<*>, val fetch: () -> List<FeedItem>?)
 
+    companion object {
+        private const val SOURCE_TIMEOUT_SECONDS = 5L
+        private const val SOURCE_THREADS = 8
+        private const val SOURCE_QUEUE_SIZE = 32
+        private const val KEEP_ALIVE_SECONDS = 60L
+    }
+}
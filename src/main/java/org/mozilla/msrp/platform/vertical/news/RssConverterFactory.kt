@@ -0,0 +1,132 @@
+package org.mozilla.msrp.platform.vertical.news
+
+import okhttp3.ResponseBody
+import retrofit2.Converter
+import retrofit2.Retrofit
+import java.io.InputStream
+import java.lang.reflect.Type
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamReader
+
+/**
+ * Reads [GoogleRss], [Liputan6Rss] and [DetikRss] responses with a StAX pull parser.
+ *
+ * Items are mapped straight into their [FeedItem] as the stream is read, and parsing stops after
+ * [maxItems] items. Other response types are left to the next converter.
+ */
+class RssConverterFactory(private val maxItems: Int) : Converter.Factory() {
+
+    override fun responseBodyConverter(type: Type, annotations: Array<Annotation>, retrofit: Retrofit): Converter<ResponseBody, *>? {
+        val feed = FEEDS[type] ?: return null
+        return Converter<ResponseBody, Any> { body ->
+            body.use { feed.parse(it.byteStream(), maxItems) }
+        }
+    }
+
+    companion object {
+        private val FEEDS: Map<Type, RssFeed<*>> = mapOf(
+                GoogleRss::class.java to RssFeed({ GoogleRss() }, { GoogleFeedItem() }, "media:content", readSource = true),
+                Liputan6Rss::class.java to RssFeed({ Liputan6Rss() }, { LiputanFeedItem() }, "media:thumbnail"),
+                DetikRss::class.java to RssFeed({ DetikRss() }, { DetikFeedItem() }, "enclosure")
+        )
+    }
+}
+
+/**
+ * How a feed is read
+ *
+ * @param imageElement qualified name of the item element whose url attribute is the image
+ * @param readSource take the item source from its source element, otherwise keep the item default
+ */
+class RssFeed<T : FeedItem>(
+        private val newRss: () -> Rss<T>,
+        private val newItem: () -> T,
+        private val imageElement: String,
+        private val readSource: Boolean = false
+) {
+
+    fun parse(input: InputStream, maxItems: Int): Rss<T> {
+        val reader = XML_INPUT_FACTORY.createXMLStreamReader(input)
+        try {
+            val items = mutableListOf<T>()
+            while (items.size < maxItems && reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.localName == "item") {
+                    items.add(readItem(reader))
+                }
+            }
+            return newRss().apply { feedItems = items }
+        } finally {
+            reader.close()
+        }
+    }
+
+    private fun readItem(reader: XMLStreamReader): T {
+        val item = newItem()
+        var depth = 1
+        while (depth > 0) {
+            when (reader.next()) {
+                XMLStreamConstants.START_ELEMENT -> {
+                    if (depth == 1 && readField(reader, item)) {
+                        // the field consumed its element up to the end tag
+                        continue
+                    }
+                    depth++
+                }
+                XMLStreamConstants.END_ELEMENT -> depth--
+            }
+        }
+        return item
+    }
+
+    private fun readField(reader: XMLStreamReader, item: T): Boolean {
+        when (qualifiedName(reader)) {
+            "title" -> item.title = readText(reader)
+            "link" -> item.link = readText(reader)
+            "description" -> item.description = readText(reader)
+            "pubDate" -> item.pubDate = readText(reader)
+            "source" -> {
+                val source = readText(reader)
+                if (readSource) {
+                    item.source = source
+                }
+            }
+            imageElement -> {
+                item.image = reader.getAttributeValue(null, "url") ?: item.image
+                readText(reader)
+            }
+            else -> return false
+        }
+        return true
+    }
+
+    private fun qualifiedName(reader: XMLStreamReader): String {
+        val prefix = reader.prefix
+        return if (prefix.isNullOrEmpty()) reader.localName else "$prefix:${reader.localName}"
+    }
+
+    // text and CDATA of the current element, nested elements are skipped
+    private fun readText(reader: XMLStreamReader): String {
+        val text = StringBuilder()
+        var depth = 1
+        while (depth > 0) {
+            when (reader.next()) {
+                XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> if (depth == 1) text.append(reader.text)
+                XMLStreamConstants.START_ELEMENT -> depth++
+                XMLStreamConstants.END_ELEMENT -> depth--
+                XMLStreamConstants.END_DOCUMENT -> throw XMLStreamException("unexpected end of feed")
+            }
+        }
+        return text.toString().trim()
+    }
+
+    companion object {
+        // the factory is thread-safe once configured
+        private val XML_INPUT_FACTORY = XMLInputFactory.newInstance().apply {
+            setProperty(XMLInputFactory.SUPPORT_DTD, false)
+            setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+            setProperty(XMLInputFactory.IS_COALESCING, true)
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.mozilla.msrp.platform.common.http
+
+import okhttp3.Interceptor
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.ArgumentMatchers.any
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import java.io.IOException
+
+class RequestLimitInterceptorTest {
+
+    private val interceptor = RequestLimitInterceptor(2, 1, 10)
+
+    @Test
+    fun `permit is held until the body is closed`() {
+        val first = interceptor.intercept(chain("http://a/feed"))
+
+        assertFails { interceptor.intercept(chain("http://a/other")) }
+
+        first.close()
+        assertEquals(200, interceptor.intercept(chain("http://a/other")).code())
+    }
+
+    @Test
+    fun `hosts are limited separately within the total`() {
+        interceptor.intercept(chain("http://a/feed"))
+        interceptor.intercept(chain("http://b/feed"))
+
+        assertFails { interceptor.intercept(chain("http://c/feed")) }
+    }
+
+    @Test
+    fun `permit is released when the call fails`() {
+        val failing = chain("http://a/feed")
+        `when`(failing.proceed(any())).thenThrow(IOException("connection reset"))
+        assertFails { interceptor.intercept(failing) }
+
+        assertEquals(200, interceptor.intercept(chain("http://a/feed")).code())
+    }
+
+    private fun assertFails(block: () -> Unit) {
+        try {
+            block()
+        } catch (e: IOException) {
+            return
+        }
+        throw AssertionError("request should have been refused")
+    }
+
+    private fun chain(url: String): Interceptor.Chain {
+        val request = Request.Builder().url(url).build()
+        val response = Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("")
+                .body(ResponseBody.create(null, "feed"))
+                .build()
+        val chain = mock(Interceptor.Chain::class.java)
+        `when`(chain.request()).thenReturn(request)
+        `when`(chain.proceed(request)).thenReturn(response)
+        return chain
+    }
+}
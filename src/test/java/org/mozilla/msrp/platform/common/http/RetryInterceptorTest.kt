@@ -0,0 +1,67 @@
+package org.mozilla.msrp.platform.common.http
+
+import okhttp3.Interceptor
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.ArgumentMatchers.any
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import java.io.IOException
+import java.net.SocketTimeoutException
+
+class RetryInterceptorTest {
+
+    private val request = Request.Builder().url("http://upstream/feed").build()
+    private val chain = mock(Interceptor.Chain::class.java).also {
+        `when`(it.request()).thenReturn(request)
+    }
+
+    @Test
+    fun `server errors are retried up to the max`() {
+        `when`(chain.proceed(any())).thenReturn(response(503), response(503), response(200))
+
+        val response = RetryInterceptor(2, 1, 1000).intercept(chain)
+
+        assertEquals(200, response.code())
+        verify(chain, times(3)).proceed(any())
+    }
+
+    @Test(expected = SocketTimeoutException::class)
+    fun `timeouts are not retried`() {
+        `when`(chain.proceed(any())).thenThrow(SocketTimeoutException("Read timed out"))
+
+        try {
+            RetryInterceptor(2, 1, 1000).intercept(chain)
+        } finally {
+            verify(chain, times(1)).proceed(any())
+        }
+    }
+
+    @Test(expected = IOException::class)
+    fun `no retry starts past the retry time`() {
+        `when`(chain.proceed(any())).thenThrow(IOException("connection reset"))
+
+        try {
+            // the first backoff alone is over the limit
+            RetryInterceptor(2, 100, 50).intercept(chain)
+        } finally {
+            verify(chain, times(1)).proceed(any())
+        }
+    }
+
+    private fun response(code: Int): Response {
+        return Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("")
+                .body(ResponseBody.create(null, ""))
+                .build()
+    }
+}
@@ -0,0 +1,96 @@
+package org.mozilla.msrp.platform.mission
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import com.google.api.core.ApiFutures
+import com.google.cloud.firestore.CollectionReference
+import com.google.cloud.firestore.DocumentReference
+import com.google.cloud.firestore.DocumentSnapshot
+import com.google.cloud.firestore.Firestore
+import com.google.cloud.firestore.Query
+import com.google.cloud.firestore.Transaction
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.any
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+class JoinedMissionIndexTest {
+
+    private val uid = "uid"
+
+    private val firestore = mock(Firestore::class.java)
+    private val indexRef = mock(DocumentReference::class.java)
+    private val indexSnapshot = mock(DocumentSnapshot::class.java)
+
+    private val index = JoinedMissionIndex(firestore).apply { mapper = jacksonObjectMapper() }
+
+    @Before
+    fun setUp() {
+        val indexCollection = mock(CollectionReference::class.java)
+        `when`(firestore.collection("mission_join_index")).thenReturn(indexCollection)
+        `when`(indexCollection.document(uid)).thenReturn(indexRef)
+        `when`(indexRef.get()).thenReturn(ApiFutures.immediateFuture(indexSnapshot))
+
+        val joinDocsQuery = mock(Query::class.java)
+        `when`(firestore.collectionGroup("users")).thenReturn(joinDocsQuery)
+        `when`(joinDocsQuery.whereEqualTo("uid", uid)).thenReturn(joinDocsQuery)
+    }
+
+    @Test
+    fun `missions written before the backfill are kept`() {
+        // m2 was completed after the user's first read, the index doc already holds it
+        val indexed = mapOf(MissionReferenceKey("mission_daily", "m2") to JoinStatus.Complete)
+        val joined = mapOf(
+                MissionReferenceKey("mission_daily", "m1") to JoinStatus.Complete,
+                MissionReferenceKey("mission_daily", "m2") to JoinStatus.Joined
+        )
+
+        val missing = JoinedMissionIndex.getMissingStatuses(indexed, joined)
+
+        assertEquals(mapOf(MissionReferenceKey("mission_daily", "m1") to JoinStatus.Complete), missing)
+        assertEquals(mapOf(
+                "missions" to mapOf("mission_daily" to mapOf("m1" to 2)),
+                "backfilled" to true
+        ), JoinedMissionIndex.toBackfillFields(missing))
+    }
+
+    @Test
+    fun `missing doc is backfilled`() {
+        val joined = mapOf(
+                MissionReferenceKey("mission_daily", "m1") to JoinStatus.Complete,
+                MissionReferenceKey("mission_daily", "m2") to JoinStatus.Joined
+        )
+
+        val missing = JoinedMissionIndex.getMissingStatuses(emptyMap(), joined)
+
+        assertEquals(joined, missing)
+    }
+
+    @Test
+    fun `doc without backfilled flag is backfilled in a transaction`() {
+        `when`(indexSnapshot.exists()).thenReturn(true)
+        `when`(indexSnapshot.getBoolean("backfilled")).thenReturn(null)
+        val result: Any = mapOf(MissionReferenceKey("mission_daily", "m2") to JoinStatus.Joined) to 0
+        `when`(firestore.runTransaction(any<Transaction.Function<Any>>())).thenReturn(ApiFutures.immediateFuture(result))
+
+        val statuses = index.getJoinStatuses(uid)
+
+        assertEquals(mapOf(MissionReferenceKey("mission_daily", "m2") to JoinStatus.Joined), statuses)
+        verify(indexRef, never()).set(any(Any::class.java), any())
+    }
+
+    @Test
+    fun `backfilled doc is read as is`() {
+        `when`(indexSnapshot.exists()).thenReturn(true)
+        `when`(indexSnapshot.getBoolean("backfilled")).thenReturn(true)
+        `when`(indexSnapshot.get("missions")).thenReturn(mapOf("mission_daily" to mapOf("m2" to 1L)))
+
+        val statuses = index.getJoinStatuses(uid)
+
+        assertEquals(mapOf(MissionReferenceKey("mission_daily", "m2") to JoinStatus.Joined), statuses)
+        verify(firestore, never()).runTransaction(any<Transaction.Function<Any>>())
+    }
+}
@@ -0,0 +1,48 @@
+package org.mozilla.msrp.platform.user
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mozilla.msrp.platform.user.SignInCounter.Companion.countInWindow
+import org.mozilla.msrp.platform.user.SignInCounter.Companion.toEpochDay
+import java.time.Instant
+
+class SignInCounterTest {
+
+    private fun epochDay(time: String) = toEpochDay(Instant.parse(time).toEpochMilli())
+
+    private fun millis(time: String) = Instant.parse(time).toEpochMilli()
+
+    @Test
+    fun `sign-ins are bucketed by UTC day`() {
+        assertEquals(epochDay("2019-11-01T00:00:00Z"), epochDay("2019-11-01T23:59:59.999Z"))
+        assertEquals(epochDay("2019-11-01T00:00:00Z") + 1, epochDay("2019-11-02T00:00:00Z"))
+    }
+
+    @Test
+    fun `window is today and the 6 days before`() {
+        val days = mapOf(
+                epochDay("2019-10-25T23:59:59Z") to 1,  // 7 days ago, out
+                epochDay("2019-10-26T00:00:00Z") to 2,  // 6 days ago, first day of the window
+                epochDay("2019-11-01T12:00:00Z") to 4   // today
+        )
+
+        assertEquals(6, countInWindow(days, millis("2019-11-01T00:00:00Z")))
+        assertEquals(6, countInWindow(days, millis("2019-11-01T23:59:59.999Z")))
+    }
+
+    @Test
+    fun `first day falls out of the window at midnight UTC`() {
+        val days = mapOf(epochDay("2019-10-26T00:00:00Z") to 1)
+
+        assertEquals(1, countInWindow(days, millis("2019-11-01T23:59:59.999Z")))
+        assertEquals(0, countInWindow(days, millis("2019-11-02T00:00:00Z")))
+    }
+
+    @Test
+    fun `window spans only 144 hours right after midnight`() {
+        // 6 days and 1 hour before now, still within the 168 hours the activity query looked back
+        val days = mapOf(epochDay("2019-10-25T23:00:00Z") to 1)
+
+        assertEquals(0, countInWindow(days, millis("2019-11-01T00:00:00Z")))
+    }
+}
@@ -0,0 +1,30 @@
+package org.mozilla.msrp.platform.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class StringUtilTest {
+
+    @Test
+    fun testHashMatchesSha256() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", "".hash())
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", "abc".hash())
+    }
+
+    @Test
+    fun testToHex() {
+        assertEquals("00017f80ff", byteArrayOf(0, 1, 127, -128, -1).toHex())
+    }
+
+    @Test
+    fun testHashFromManyThreads() {
+        val executor = Executors.newFixedThreadPool(8)
+        val expected = (0 until 200).map { "https://example.com/$it".hash() }
+        val results = executor.invokeAll((0 until 200).map { Callable { "https://example.com/$it".hash() } })
+        executor.shutdown()
+
+        assertEquals(expected, results.map { it.get() })
+    }
+}
@@ -0,0 +1,103 @@
+package org.mozilla.msrp.platform.vertical.content.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Test
+import org.mozilla.msrp.platform.util.hash
+
+class ContentCsvParserTest {
+
+    private val header = "subcategory_name,subcategory_id,component_type_name,destination,title,score,partner"
+
+    private fun csv(vararg lines: String) = lines.joinToString("\n").toByteArray()
+
+    @Test
+    fun `columns are matched by name, in any case and order`() {
+        val list = csv(
+                "﻿Title, SCORE ,destination,Subcategory_Id,subcategory_name,component_type_name,unknown",
+                "Game,4.5,https://a,18,Strategy,Scard,ignored"
+        )
+
+        val item = parseContent(null, list).subcategories.single().items.single()
+
+        assertEquals("Game", item.title)
+        assertEquals(4.5, item.score)
+        assertEquals("https://a", item.destination)
+        assertEquals(18, item.subcategory_id)
+        assertEquals("https://a".hash(), item.component_id)
+    }
+
+    @Test
+    fun `missing columns and blank cells keep the default value`() {
+        val list = csv(
+                "subcategory_name,subcategory_id,component_type_name,destination,score",
+                "Strategy,18,Scard,https://a,"
+        )
+
+        val item = parseContent(null, list).subcategories.single().items.single()
+
+        assertEquals("", item.title)
+        assertEquals(0.0, item.score)
+        assertEquals(false, item.partner)
+    }
+
+    @Test
+    fun `bad rows are reported with their line`() {
+        val list = csv(
+                header,
+                "Strategy,18,Scard,https://a,Game,4.5,true",
+                "Strategy,eighteen,Scard,https://b,Game,4.5,true",
+                "Strategy,18,Scard,https://c,Game,4.5,maybe"
+        )
+
+        try {
+            parseContent(null, list)
+            fail("bad rows should fail the upload")
+        } catch (e: ContentCsvException) {
+            assertEquals(listOf(
+                    "line 3: subcategory_id is not a number: eighteen",
+                    "line 4: partner is not a boolean: maybe"
+            ), e.errors)
+        }
+    }
+
+    @Test
+    fun `reported errors are capped`() {
+        val badRows = (1..CsvParserConfig.MAX_REPORTED_ERRORS + 5).map { "Strategy,18,Scard,https://$it,Game,high,true" }
+        val list = csv(header, *badRows.toTypedArray())
+
+        try {
+            parseContent(null, list)
+            fail("bad rows should fail the upload")
+        } catch (e: ContentCsvException) {
+            assertEquals(CsvParserConfig.MAX_REPORTED_ERRORS, e.errors.size)
+            assertEquals("line 2: score is not a number: high", e.errors.first())
+        }
+    }
+
+    @Test
+    fun `banner comes first and list items are grouped by subcategory in order of appearance`() {
+        val banner = csv(
+                header,
+                "banner,22,banner,https://banner1,Banner 1,,",
+                "banner,22,banner,https://banner2,Banner 2,,"
+        )
+        val list = csv(
+                header,
+                "Strategy,18,Scard,https://s1,S1,,",
+                "Action,19,Scard,https://a1,A1,,",
+                "Strategy,18,Scard,https://s2,S2,,",
+                "Action,19,Scard,https://a2,A2,,"
+        )
+
+        val subcategories = parseContent(banner, list).subcategories
+
+        assertEquals(listOf(
+                Triple(CsvParserConfig.BANNER_SUBCATEGORY_NAME, CsvParserConfig.BANNER_SUBCATEGORY_ID, listOf("Banner 1", "Banner 2")),
+                Triple("Strategy", 18, listOf("S1", "S2")),
+                Triple("Action", 19, listOf("A1", "A2"))
+        ), subcategories.map { subcategory ->
+            Triple(subcategory.subcategoryName, subcategory.subcategoryId, subcategory.items.map { it.title })
+        })
+    }
+}
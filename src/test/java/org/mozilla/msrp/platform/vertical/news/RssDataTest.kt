@@ -1,7 +1,11 @@
 package org.mozilla.msrp.platform.vertical.news
 
+import okhttp3.MediaType
+import okhttp3.ResponseBody
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
 import org.junit.Test
-import org.simpleframework.xml.core.Persister
+import retrofit2.Retrofit
 import java.io.File
 
 
@@ -9,46 +13,95 @@ class RssDataTest {
 
     @Test
     fun parseGoogle() {
-        val serializer = Persister()
-        val classLoader = javaClass.classLoader
-        val file = File(classLoader.getResource("./rssGoogle.xml")!!.file)
-        val rss: GoogleRss = read(serializer, file)
+        val rss = parse(GoogleRss::class.java, "./rssGoogle.xml")
         assert(rss.feedItems?.filter { it.title != "" }?.size == 70)
         assert(rss.feedItems?.filter { it.image != null }?.size == 36)
         assert(rss.feedItems?.filter { it.source != "" }?.size == 70)
         assert(rss.feedItems?.filter { it.description != "" }?.size == 70)
         assert(rss.feedItems?.filter { it.pubDate != "" }?.size == 70)
         assert(rss.feedItems?.filter { it.link != "" }?.size == 70)
+
+        val first = rss.feedItems!!.first()
+        assertEquals("The vaping industry has close ties to Trump. His ban still caught them off guard. - The Washington Post", first.title)
+        assertEquals("https://www.washingtonpost.com/health/the-vaping-industry-has-close-ties-to-trump-his-ban-still-caught-them-off-guard/2019/09/17/0423c994-d8c0-11e9-ac63-3016711543fe_story.html", first.link)
+        assertEquals("Tue, 17 Sep 2019 23:25:46 GMT", first.pubDate)
+        assertEquals("The Washington Post", first.source)
+        assertNull(first.image)
+        assert(first.description!!.startsWith("<ol><li><a href=\"https://www.washingtonpost.com/health/"))
     }
 
     @Test
     fun parseLiputan6() {
-        val serializer = Persister()
-        val classLoader = javaClass.classLoader
-        val file = File(classLoader.getResource("./rssLiputan6.xml")!!.file)
-        val rss: Liputan6Rss = read(serializer, file)
+        val rss = parse(Liputan6Rss::class.java, "./rssLiputan6.xml")
         assert(rss.feedItems?.filter { it.title != "" }?.size == 50)
         assert(rss.feedItems?.filter { it.image != "" }?.size == 50)
         assert(rss.feedItems?.filter { it.source != "" }?.size == 50)
         assert(rss.feedItems?.filter { it.description != "" }?.size == 50)
         assert(rss.feedItems?.filter { it.pubDate != "" }?.size == 50)
         assert(rss.feedItems?.filter { it.link != "" }?.size == 50)
+
+        val first = rss.feedItems!!.first()
+        assertEquals("PODCAST: Film Marvel Cinematic Universe Fase Ke-4 Diumumkan", first.title)
+        assertEquals("https://www.liputan6.com/showbiz/read/4065131/podcast-film-marvel-cinematic-universe-fase-ke-4-diumumkan?utm_source=Digital+Marketing&utm_medium=Partnership&utm_campaign=mozilla", first.link)
+        assertEquals("Wed, 18 Sep 2019 09:40:42 +0700", first.pubDate)
+        assertEquals("liputan6", first.source)
+        assertEquals("https://cdn0-production-images-kly.akamaized.net/cbCh1kgm_4IfE9lrD5WylDisuvE=/673x379/smart/filters:quality(75):strip_icc():format(jpeg)/kly-media-production/medias/2914123/original/008174900_1568729191-08_FILM_FILM_DI_FASE_KEEMPAT_MCU_1280x720.jpg", first.image)
+        assert(first.description!!.startsWith("<div id=\"page-1\"><p><b>Liputan6.com, Jakarta</b>"))
     }
 
     @Test
     fun parseDetik() {
-        val serializer = Persister()
-        val classLoader = javaClass.classLoader
-        val file = File(classLoader.getResource("./rssDetik.xml")!!.file)
-        val rss: DetikRss = read(serializer, file)
+        val rss = parse(DetikRss::class.java, "./rssDetik.xml")
         assert(rss.feedItems?.filter { it.title != "" }?.size == 9)
         assert(rss.feedItems?.filter { it.image != "" }?.size == 9)
         assert(rss.feedItems?.filter { it.source != "" }?.size == 9)
         assert(rss.feedItems?.filter { it.description != "" }?.size == 9)
         assert(rss.feedItems?.filter { it.pubDate != "" }?.size == 9)
         assert(rss.feedItems?.filter { it.link != "" }?.size == 9)
+
+        val first = rss.feedItems!!.first()
+        assertEquals("'Game of Thrones' Menang Serial Drama Terbaik Emmy Award 2019", first.title)
+        assertEquals("https://hot.detik.com/read/2019/09/23/105112/4717295/231/game-of-thrones-menang-serial-drama-terbaik-emmy-award-2019", first.link)
+        assertEquals("Mon, 23 Sep 2019 10:57:00 +0700", first.pubDate)
+        assertEquals("Detik", first.source)
+        assertEquals("https://akcdn.detik.net.id/visual/2017/08/08/fc0f1904-abc9-4cda-9aa3-4b55fc4d62fe_43.jpg", first.image)
+        assertEquals("<img src=\"https://akcdn.detik.net.id/visual/2017/08/08/fc0f1904-abc9-4cda-9aa3-4b55fc4d62fe_43.jpg\" align=\"left\" hspace=\"7\" width=\"100\" />" +
+                "Kisah 'Game of Thrones' memang sudah berakhir. Akan tetapi, serial ini masih layak ambil bagian dalam kompetisi ajang Emmy Award tahun ini.", first.description)
     }
 
-}
+    @Test
+    fun streamingParserStopsAtMaxItems() {
+        val rss = parse(GoogleRss::class.java, "./rssGoogle.xml", maxItems = 10)
+        assertEquals(10, rss.feedItems?.size)
+    }
+
+    @Test
+    fun sortNewestFirst() {
+        val gmt = GoogleFeedItem(pubDate = "Tue, 17 Sep 2019 23:25:46 GMT")
+        val jakarta = DetikFeedItem(pubDate = "Wed, 18 Sep 2019 09:40:42 +0700")
+        val unknown = LiputanFeedItem(pubDate = "yesterday")
+
+        assertEquals(listOf(jakarta, gmt, unknown), listOf(unknown, gmt, jakarta).sorted())
+        assertEquals(0, gmt.compareTo(GoogleFeedItem(pubDate = "Tue, 17 Sep 2019 23:25:46 GMT")))
+    }
+
+    @Test
+    fun sortFollowsUpdatedPubDate() {
+        val gmt = GoogleFeedItem(pubDate = "Tue, 17 Sep 2019 23:25:46 GMT")
+        val updated = LiputanFeedItem(pubDate = "yesterday")
 
-inline fun <reified T : Any> read(serializer: Persister, file: File): T = serializer.read(T::class.java, file)
+        updated.pubDate = "Thu, 19 Sep 2019 08:00:00 +0700"
+
+        assertEquals(listOf(updated, gmt), listOf(gmt, updated).sorted())
+    }
+
+    private fun file(name: String) = File(javaClass.classLoader.getResource(name)!!.file)
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <T : Rss<*>> parse(type: Class<T>, name: String, maxItems: Int = Int.MAX_VALUE): T {
+        val retrofit = Retrofit.Builder().baseUrl("http://localhost/").build()
+        val converter = RssConverterFactory(maxItems).responseBodyConverter(type, arrayOf(), retrofit)!!
+        val body = ResponseBody.create(MediaType.parse("application/rss+xml"), file(name).readBytes())
+        return converter.convert(body) as T
+    }
+}